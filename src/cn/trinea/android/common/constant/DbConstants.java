@@ -8,7 +8,7 @@ package cn.trinea.android.common.constant;
 public class DbConstants {
 
     public static final String       DB_NAME                                       = "trinea_android_common.db";
-    public static final int          DB_VERSION                                    = 1;
+    public static final int          DB_VERSION                                    = 2;
 
     private static final String      TERMINATOR                                    = ";";
 
@@ -52,6 +52,11 @@ public class DbConstants {
     public static final String       HTTP_CACHE_TABLE_EXPIRES                      = "expires";
     public static final String       HTTP_CACHE_TABLE_CREATE_TIME                  = "gmt_create";
     public static final String       HTTP_CACHE_TABLE_TYPE                         = "type";
+    public static final String       HTTP_CACHE_TABLE_ETAG                         = "etag";
+    public static final String       HTTP_CACHE_TABLE_LAST_MODIFIED                = "last_modified";
+    public static final String       HTTP_CACHE_TABLE_STALE_WHILE_REVALIDATE       = "stale_while_revalidate";
+    public static final String       HTTP_CACHE_TABLE_STALE_IF_ERROR               = "stale_if_error";
+    public static final String       HTTP_CACHE_TABLE_CACHE_CONTROL                = "cache_control";
 
     public static final String       HTTP_CACHE_TABLE_UNIQUE_INDEX_URL             = "http_cache_table_unique_index_url";
     public static final String       HTTP_CACHE_TABLE_INDEX_TYPE                   = "http_cache_table_index_type";
@@ -62,6 +67,21 @@ public class DbConstants {
     public static final int          HTTP_CACHE_TABLE_EXPIRES_INDEX                = 3;
     public static final int          HTTP_CACHE_TABLE_CREATE_TIME_INDEX            = 4;
     public static final int          HTTP_CACHE_TABLE_TYPE_INDEX                   = 5;
+    public static final int          HTTP_CACHE_TABLE_ETAG_INDEX                   = 6;
+    public static final int          HTTP_CACHE_TABLE_LAST_MODIFIED_INDEX          = 7;
+    public static final int          HTTP_CACHE_TABLE_STALE_WHILE_REVALIDATE_INDEX = 8;
+    public static final int          HTTP_CACHE_TABLE_STALE_IF_ERROR_INDEX         = 9;
+    public static final int          HTTP_CACHE_TABLE_CACHE_CONTROL_INDEX          = 10;
+
+    /** sql to upgrade http response table from version 1 to 2, columns are added to the end of table **/
+    public static final String[]     UPGRADE_HTTP_CACHE_TABLE_TO_2_SQL             = {
+            "ALTER TABLE " + HTTP_CACHE_TABLE_TABLE_NAME + " ADD COLUMN " + HTTP_CACHE_TABLE_ETAG + " text",
+            "ALTER TABLE " + HTTP_CACHE_TABLE_TABLE_NAME + " ADD COLUMN " + HTTP_CACHE_TABLE_LAST_MODIFIED + " text",
+            "ALTER TABLE " + HTTP_CACHE_TABLE_TABLE_NAME + " ADD COLUMN " + HTTP_CACHE_TABLE_STALE_WHILE_REVALIDATE
+                    + " integer DEFAULT -1",
+            "ALTER TABLE " + HTTP_CACHE_TABLE_TABLE_NAME + " ADD COLUMN " + HTTP_CACHE_TABLE_STALE_IF_ERROR
+                    + " integer DEFAULT -1",
+            "ALTER TABLE " + HTTP_CACHE_TABLE_TABLE_NAME + " ADD COLUMN " + HTTP_CACHE_TABLE_CACHE_CONTROL + " text"};
 
     static {
         /**
@@ -97,7 +117,13 @@ public class DbConstants {
         CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_RESPONSE).append(" text,");
         CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_EXPIRES).append(" integer,");
         CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_CREATE_TIME).append(" integer,");
-        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_TYPE).append(" integer)").append(TERMINATOR);
+        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_TYPE).append(" integer,");
+        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_ETAG).append(" text,");
+        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_LAST_MODIFIED).append(" text,");
+        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_STALE_WHILE_REVALIDATE).append(" integer DEFAULT -1,");
+        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_STALE_IF_ERROR).append(" integer DEFAULT -1,");
+        CREATE_HTTP_CACHE_TABLE_SQL.append(HTTP_CACHE_TABLE_CACHE_CONTROL).append(" text)")
+                .append(TERMINATOR);
 
         CREATE_HTTP_CACHE_TABLE_UNIQUE_INDEX.append("CREATE UNIQUE INDEX ").append(HTTP_CACHE_TABLE_UNIQUE_INDEX_URL)
                 .append(" ON ").append(HTTP_CACHE_TABLE_TABLE_NAME).append("(").append(HTTP_CACHE_TABLE_URL)
@@ -8,6 +8,11 @@ package cn.trinea.android.common.constant;
  */
 public class HttpConstants {
 
-    public static final String EXPIRES       = "expires";
-    public static final String CACHE_CONTROL = "cache-control";
+    public static final String EXPIRES           = "expires";
+    public static final String CACHE_CONTROL     = "cache-control";
+    public static final String ETAG              = "etag";
+    public static final String LAST_MODIFIED     = "last-modified";
+    public static final String IF_NONE_MATCH     = "if-none-match";
+    public static final String IF_MODIFIED_SINCE = "if-modified-since";
+    public static final String CONTENT_TYPE      = "content-type";
 }
@@ -1,5 +1,8 @@
 package cn.trinea.android.common.dao;
 
+import java.util.Map;
+
+import cn.trinea.android.common.entity.CacheObject;
 import cn.trinea.android.common.service.impl.ImageSDCardCache;
 
 /**
@@ -24,6 +27,23 @@ public interface ImageSDCardCacheDao {
      */
     public boolean putIntoImageSDCardCache(ImageSDCardCache imageSDCardCache, String tag);
 
+    /**
+     * get all rows in db whose tag is same to tag
+     * 
+     * @param tag
+     * @return key is image url, value is cache object. empty map if tag is null or empty
+     */
+    public Map<String, CacheObject<String>> getImageSDCardCacheMap(String tag);
+
+    /**
+     * get row in db whose tag is same to tag and url is same to imageUrl, query by index of url
+     * 
+     * @param tag
+     * @param imageUrl
+     * @return null if not exist, or tag is null or empty
+     */
+    public CacheObject<String> getImageSDCardCache(String tag, String imageUrl);
+
     /**
      * delete all rows in db whose tag is same to tag at first, and insert all data in imageSDCardCache to db
      * <ul>
@@ -6,6 +6,7 @@ import java.util.Map;
 import android.content.ContentValues;
 import android.database.Cursor;
 import cn.trinea.android.common.constant.DbConstants;
+import cn.trinea.android.common.constant.HttpConstants;
 import cn.trinea.android.common.dao.HttpCacheDao;
 import cn.trinea.android.common.entity.HttpResponse;
 import cn.trinea.android.common.util.SqliteUtils;
@@ -125,6 +126,13 @@ public class HttpCacheDaoImpl implements HttpCacheDao {
         httpResponse.setResponseBody(cursor.getString(DbConstants.HTTP_CACHE_TABLE_RESPONSE_INDEX));
         httpResponse.setExpiredTime(cursor.getLong(DbConstants.HTTP_CACHE_TABLE_EXPIRES_INDEX));
         httpResponse.setType(cursor.getInt(DbConstants.HTTP_CACHE_TABLE_TYPE_INDEX));
+        httpResponse.setResponseHeader(HttpConstants.ETAG, cursor.getString(DbConstants.HTTP_CACHE_TABLE_ETAG_INDEX));
+        httpResponse.setResponseHeader(HttpConstants.LAST_MODIFIED,
+                cursor.getString(DbConstants.HTTP_CACHE_TABLE_LAST_MODIFIED_INDEX));
+        httpResponse.setStaleWhileRevalidate(cursor.getLong(DbConstants.HTTP_CACHE_TABLE_STALE_WHILE_REVALIDATE_INDEX));
+        httpResponse.setStaleIfError(cursor.getLong(DbConstants.HTTP_CACHE_TABLE_STALE_IF_ERROR_INDEX));
+        httpResponse.setResponseHeader(HttpConstants.CACHE_CONTROL,
+                cursor.getString(DbConstants.HTTP_CACHE_TABLE_CACHE_CONTROL_INDEX));
         return httpResponse;
     }
 
@@ -145,6 +153,11 @@ public class HttpCacheDaoImpl implements HttpCacheDao {
         values.put(DbConstants.HTTP_CACHE_TABLE_EXPIRES, httpResponse.getExpiredTime());
         values.put(DbConstants.HTTP_CACHE_TABLE_CREATE_TIME, TimeUtils.getCurrentTimeInString());
         values.put(DbConstants.HTTP_CACHE_TABLE_TYPE, httpResponse.getType());
+        values.put(DbConstants.HTTP_CACHE_TABLE_ETAG, httpResponse.getETag());
+        values.put(DbConstants.HTTP_CACHE_TABLE_LAST_MODIFIED, httpResponse.getLastModified());
+        values.put(DbConstants.HTTP_CACHE_TABLE_STALE_WHILE_REVALIDATE, httpResponse.getStaleWhileRevalidate());
+        values.put(DbConstants.HTTP_CACHE_TABLE_STALE_IF_ERROR, httpResponse.getStaleIfError());
+        values.put(DbConstants.HTTP_CACHE_TABLE_CACHE_CONTROL, httpResponse.getCacheControl());
         return values;
     }
 }
@@ -1,5 +1,7 @@
 package cn.trinea.android.common.dao.impl;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import android.content.ContentValues;
@@ -42,14 +44,8 @@ public class ImageSDCardCacheDaoImpl implements ImageSDCardCacheDao {
 
         if (cursor != null && cursor.getCount() > 0) {
             for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
-                CacheObject<String> value = new CacheObject<String>();
                 String imageUrl = cursor.getString(DbConstants.IMAGE_SDCARD_CACHE_TABLE_URL_INDEX);
-                value.setData(cursor.getString(DbConstants.IMAGE_SDCARD_CACHE_TABLE_PATH_INDEX));
-                value.setUsedCount(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_USED_COUNT_INDEX));
-                value.setPriority(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_PRIORITY_INDEX));
-                value.setExpired(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_IS_EXPIRED_INDEX) == 1);
-                value.setForever(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_IS_FOREVER_INDEX) == 1);
-                imageSDCardCache.put(imageUrl, value);
+                imageSDCardCache.put(imageUrl, cursorToCacheObject(cursor));
             }
         }
         if (cursor != null && !cursor.isClosed()) {
@@ -58,6 +54,54 @@ public class ImageSDCardCacheDaoImpl implements ImageSDCardCacheDao {
         return true;
     }
 
+    @Override
+    public Map<String, CacheObject<String>> getImageSDCardCacheMap(String tag) {
+        Map<String, CacheObject<String>> cacheMap = new LinkedHashMap<String, CacheObject<String>>();
+        if (StringUtils.isEmpty(tag)) {
+            return cacheMap;
+        }
+
+        StringBuilder selection = new StringBuilder();
+        selection.append(DbConstants.IMAGE_SDCARD_CACHE_TABLE_TAG).append("=?");
+        String[] selectionArgs = {tag};
+        Cursor cursor = sqliteUtils.getDb().query(DbConstants.IMAGE_SDCARD_CACHE_TABLE_TABLE_NAME, null,
+                selection.toString(), selectionArgs, null, null, null);
+        if (cursor == null) {
+            return cacheMap;
+        }
+
+        for (cursor.moveToFirst(); !cursor.isAfterLast(); cursor.moveToNext()) {
+            cacheMap.put(cursor.getString(DbConstants.IMAGE_SDCARD_CACHE_TABLE_URL_INDEX), cursorToCacheObject(cursor));
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return cacheMap;
+    }
+
+    @Override
+    public CacheObject<String> getImageSDCardCache(String tag, String imageUrl) {
+        if (StringUtils.isEmpty(tag) || imageUrl == null) {
+            return null;
+        }
+
+        StringBuilder selection = new StringBuilder();
+        selection.append(DbConstants.IMAGE_SDCARD_CACHE_TABLE_URL).append("=? AND ")
+                .append(DbConstants.IMAGE_SDCARD_CACHE_TABLE_TAG).append("=?");
+        String[] selectionArgs = {imageUrl, tag};
+        Cursor cursor = sqliteUtils.getDb().query(DbConstants.IMAGE_SDCARD_CACHE_TABLE_TABLE_NAME, null,
+                selection.toString(), selectionArgs, null, null, null, "1");
+        if (cursor == null) {
+            return null;
+        }
+
+        CacheObject<String> value = cursor.moveToFirst() ? cursorToCacheObject(cursor) : null;
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return value;
+    }
+
     @Override
     public boolean deleteAndInsertImageSDCardCache(ImageSDCardCache imageSDCardCache, String tag) {
         if (imageSDCardCache == null || StringUtils.isEmpty(tag)) {
@@ -89,6 +133,20 @@ public class ImageSDCardCacheDaoImpl implements ImageSDCardCacheDao {
         }
     }
 
+    /**
+     * @param cursor
+     * @return
+     */
+    private static CacheObject<String> cursorToCacheObject(Cursor cursor) {
+        CacheObject<String> value = new CacheObject<String>();
+        value.setData(cursor.getString(DbConstants.IMAGE_SDCARD_CACHE_TABLE_PATH_INDEX));
+        value.setUsedCount(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_USED_COUNT_INDEX));
+        value.setPriority(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_PRIORITY_INDEX));
+        value.setExpired(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_IS_EXPIRED_INDEX) == 1);
+        value.setForever(cursor.getInt(DbConstants.IMAGE_SDCARD_CACHE_TABLE_IS_FOREVER_INDEX) == 1);
+        return value;
+    }
+
     /**
      * @param tag
      * @param url
@@ -1,5 +1,7 @@
 package cn.trinea.android.common.entity;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import cn.trinea.android.common.util.ObjectUtils;
@@ -21,6 +23,8 @@ public class CacheObject<V> implements Serializable, Comparable<CacheObject<V>>
     protected long            usedCount;
     /** priority, default is zero **/
     protected int             priority;
+    /** size of data in bytes, such as size of the file data represents, less than 0 means unknown, default is -1 **/
+    protected long            size;
 
     /** whether has expired, default is false **/
     protected boolean         isExpired;
@@ -35,6 +39,7 @@ public class CacheObject<V> implements Serializable, Comparable<CacheObject<V>>
         this.lastUsedTime = System.currentTimeMillis();
         this.usedCount = 0;
         this.priority = 0;
+        this.size = -1;
         this.isExpired = false;
         this.isForever = false;
     }
@@ -125,6 +130,24 @@ public class CacheObject<V> implements Serializable, Comparable<CacheObject<V>>
         this.priority = priority;
     }
 
+    /**
+     * Get size of data in bytes, such as size of the file data represents, less than 0 means unknown, default is -1
+     * 
+     * @return
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Set size of data in bytes, such as size of the file data represents, less than 0 means unknown
+     * 
+     * @param size
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
     /**
      * Get whether has expired, default is false
      * 
@@ -209,4 +232,20 @@ public class CacheObject<V> implements Serializable, Comparable<CacheObject<V>>
     public int hashCode() {
         return data == null ? 0 : data.hashCode();
     }
+
+    /**
+     * read fields, size is -1 if object is serialized before size added
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        enterTime = fields.get("enterTime", 0L);
+        lastUsedTime = fields.get("lastUsedTime", 0L);
+        usedCount = fields.get("usedCount", 0L);
+        priority = fields.get("priority", 0);
+        size = fields.defaulted("size") ? -1 : fields.get("size", -1L);
+        isExpired = fields.get("isExpired", false);
+        isForever = fields.get("isForever", false);
+        data = (V)fields.get("data", null);
+    }
 }
@@ -19,14 +19,21 @@ import cn.trinea.android.common.util.TimeUtils;
  * <ul>
  * <strong>Get</strong>
  * <li>{@link #getResponseBody()}</li>
+ * <li>{@link #getResponseBytes()} response body as bytes, only set by {@link HttpUtils#httpGetBytes(String)}</li>
  * <li>{@link #getUrl()}</li>
  * <li>{@link #getExpiredTime()} expires time</li>
  * <li>{@link #getExpiresHeader()}</li>
+ * <li>{@link #getContentType()}</li>
+ * <li>{@link #getETag()}</li>
+ * <li>{@link #getLastModified()}</li>
+ * <li>{@link #getStaleWhileRevalidate()} stale-while-revalidate in cache-control</li>
+ * <li>{@link #getStaleIfError()} stale-if-error in cache-control</li>
  * </ul>
  * <ul>
  * <strong>Setting</strong>
  * <li>{@link #setUrl(String)}</li>
  * <li>{@link #setResponseBody(String)}</li>
+ * <li>{@link #setResponseBytes(byte[])}</li>
  * <li>{@link #setResponseHeader(String, String)}</li>
  * <li>{@link #setResponseHeaders(Map)}</li>
  * </ul>
@@ -38,15 +45,22 @@ public class HttpResponse {
     private String              url;
     /** http response content **/
     private String              responseBody;
+    /** http response content as bytes **/
+    private byte[]              responseBytes;
     private Map<String, Object> responseHeaders;
     /** type to mark this response **/
     private int                 type;
     /** expired time in milliseconds **/
-    private long                expiredTime;
+    private volatile long       expiredTime;
+    /** seconds an expired response can be used while revalidating in background, -1 if not set, see RFC 5861 **/
+    private long                staleWhileRevalidate;
+    /** seconds an expired response can be used if revalidate fail, -1 if not set, see RFC 5861 **/
+    private long                staleIfError;
     /** this is a client mark, whether this response is in client cache **/
     private boolean             isInCache;
 
     private boolean             isInitExpiredTime;
+    private boolean             isInitStaleTime;
     /**
      * An <code>int</code> representing the three digit HTTP Status-Code.
      * <ul>
@@ -87,6 +101,19 @@ public class HttpResponse {
         this.responseBody = responseBody;
     }
 
+    /**
+     * get response body as bytes
+     * 
+     * @return null if response body is not got as bytes, see {@link HttpUtils#httpGetBytes(String)}
+     */
+    public byte[] getResponseBytes() {
+        return responseBytes;
+    }
+
+    public void setResponseBytes(byte[] responseBytes) {
+        this.responseBytes = responseBytes;
+    }
+
     /**
      * get reponse code
      * 
@@ -190,6 +217,87 @@ public class HttpResponse {
         return TimeUtils.getCurrentTimeInLong() > expiredTime;
     }
 
+    /**
+     * get stale-while-revalidate in seconds, an expired response can be used while revalidating in background in this
+     * time after expired
+     * 
+     * @return -1 if no stale-while-revalidate in cache-control
+     */
+    public long getStaleWhileRevalidate() {
+        initStaleTime();
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * set stale-while-revalidate in seconds
+     * 
+     * @param staleWhileRevalidate
+     */
+    public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+        initStaleTime();
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * get stale-if-error in seconds, an expired response can be used if revalidate fail in this time after expired
+     * 
+     * @return -1 if no stale-if-error in cache-control
+     */
+    public long getStaleIfError() {
+        initStaleTime();
+        return staleIfError;
+    }
+
+    /**
+     * set stale-if-error in seconds
+     * 
+     * @param staleIfError
+     */
+    public void setStaleIfError(long staleIfError) {
+        initStaleTime();
+        this.staleIfError = staleIfError;
+    }
+
+    /**
+     * whether this response has expired but can be used while revalidating in background
+     * 
+     * @return
+     */
+    public boolean isInStaleWhileRevalidate() {
+        return isInStaleTime(getStaleWhileRevalidate());
+    }
+
+    /**
+     * whether this response has expired but can be used if revalidate fail
+     * 
+     * @return
+     */
+    public boolean isInStaleIfError() {
+        return isInStaleTime(getStaleIfError());
+    }
+
+    /**
+     * whether this response has expired, but not more than staleTime seconds
+     * 
+     * @param staleTime
+     * @return
+     */
+    private boolean isInStaleTime(long staleTime) {
+        long currentTime = TimeUtils.getCurrentTimeInLong(), expiredTime = this.expiredTime;
+        return staleTime > 0 && currentTime > expiredTime && currentTime <= expiredTime + staleTime * 1000;
+    }
+
+    /**
+     * init stale time from cache-control in reponse header if not inited
+     */
+    private void initStaleTime() {
+        if (!isInitStaleTime) {
+            isInitStaleTime = true;
+            staleWhileRevalidate = getCacheControlSeconds("stale-while-revalidate");
+            staleIfError = getCacheControlSeconds("stale-if-error");
+        }
+    }
+
     /**
      * get isInCache, this is a client mark, whethero is in client cache
      * 
@@ -224,25 +332,77 @@ public class HttpResponse {
         }
     }
 
+    /**
+     * http content-type in reponse header
+     * 
+     * @return null represents http error or no content-type in response headers
+     */
+    public String getContentType() {
+        try {
+            return responseHeaders == null ? null : (String)responseHeaders.get(HttpConstants.CONTENT_TYPE);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * http etag in reponse header
+     * 
+     * @return null represents http error or no etag in response headers
+     */
+    public String getETag() {
+        return (String)getResponseHeader(HttpConstants.ETAG);
+    }
+
+    /**
+     * http last-modified in reponse header
+     * 
+     * @return null represents http error or no last-modified in response headers
+     */
+    public String getLastModified() {
+        return (String)getResponseHeader(HttpConstants.LAST_MODIFIED);
+    }
+
+    /**
+     * http cache-control in reponse header
+     * 
+     * @return null represents http error or no cache-control in response headers
+     */
+    public String getCacheControl() {
+        return (String)getResponseHeader(HttpConstants.CACHE_CONTROL);
+    }
+
     /**
      * http cache-control in reponse header
      * 
      * @return -1 represents http error or no cache-control in response headers, or max-age in seconds
      */
     private long getCacheControlMaxAge() {
+        return getCacheControlSeconds("max-age");
+    }
+
+    /**
+     * seconds of the directive in cache-control of reponse header, such as max-age, stale-while-revalidate
+     * 
+     * @param directive
+     * @return -1 represents http error or no the directive in cache-control of response headers
+     */
+    private long getCacheControlSeconds(String directive) {
         try {
             String cacheControl = (String)responseHeaders.get(HttpConstants.CACHE_CONTROL);
             if (!StringUtils.isEmpty(cacheControl)) {
-                int start = cacheControl.indexOf("max-age=");
+                String prefix = directive + "=";
+                int start = cacheControl.indexOf(prefix);
                 if (start != -1) {
                     int end = cacheControl.indexOf(",", start);
-                    String maxAge;
+                    String seconds;
                     if (end != -1) {
-                        maxAge = cacheControl.substring(start + "max-age=".length(), end);
+                        seconds = cacheControl.substring(start + prefix.length(), end);
                     } else {
-                        maxAge = cacheControl.substring(start + "max-age=".length());
+                        seconds = cacheControl.substring(start + prefix.length());
                     }
-                    return Long.parseLong(maxAge);
+                    return Long.parseLong(seconds.trim());
                 }
             }
             return -1;
@@ -252,6 +412,18 @@ public class HttpResponse {
         }
     }
 
+    /**
+     * get expires by max-age in cache-control relative to now, used to refresh freshness of response in cache when it
+     * is revalidated
+     * 
+     * @return -1 represents http error or no max-age in cache-control of response headers, or current time plus
+     *         max-age
+     */
+    public long getExpiresInMillisByMaxAge() {
+        long maxAge = getCacheControlMaxAge();
+        return maxAge == -1 ? -1 : System.currentTimeMillis() + maxAge * 1000;
+    }
+
     /**
      * get expires
      * 
@@ -262,9 +434,9 @@ public class HttpResponse {
      *         </ul>
      */
     private long getExpiresInMillis() {
-        long maxAge = getCacheControlMaxAge();
-        if (maxAge != -1) {
-            return System.currentTimeMillis() + maxAge * 1000;
+        long expiresInMillis = getExpiresInMillisByMaxAge();
+        if (expiresInMillis != -1) {
+            return expiresInMillis;
         } else {
             String expire = getExpiresHeader();
             if (!StringUtils.isEmpty(expire)) {
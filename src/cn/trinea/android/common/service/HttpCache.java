@@ -1,10 +1,11 @@
 package cn.trinea.android.common.service;
 
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -14,9 +15,12 @@ import android.os.Build;
 import cn.trinea.android.common.constant.HttpConstants;
 import cn.trinea.android.common.dao.HttpCacheDao;
 import cn.trinea.android.common.dao.impl.HttpCacheDaoImpl;
+import cn.trinea.android.common.entity.CacheObject;
 import cn.trinea.android.common.entity.HttpRequest;
 import cn.trinea.android.common.entity.HttpResponse;
 import cn.trinea.android.common.service.impl.ImageCache;
+import cn.trinea.android.common.service.impl.RemoveTypeLastUsedTimeFirst;
+import cn.trinea.android.common.service.impl.SimpleCache;
 import cn.trinea.android.common.util.ArrayUtils;
 import cn.trinea.android.common.util.HttpUtils;
 import cn.trinea.android.common.util.SqliteUtils;
@@ -31,6 +35,26 @@ import cn.trinea.android.common.util.SystemUtils;
  * <ul>
  * <strong>Constructor</strong>
  * <li>{@link #HttpCache(Context)} to init cache</li>
+ * <li>{@link #HttpCache(Context, int, long)} to init cache with capacity of memory cache</li>
+ * </ul>
+ * <ul>
+ * <strong>Memory cache</strong>
+ * <li>Responses of all types are put into a LRU memory cache before db, it's bounded by both count and bytes, see
+ * {@link #DEFAULT_MEMORY_MAX_SIZE} and {@link #DEFAULT_MEMORY_MAX_BYTES}</li>
+ * <li>{@link #setMemoryMaxBytes(long)} set maximum bytes of memory cache</li>
+ * <li>{@link #getMemoryBytes()} get bytes of memory cache</li>
+ * </ul>
+ * <ul>
+ * <strong>Revalidation</strong>
+ * <li>If expired response is in stale-while-revalidate of its cache-control, it's returned immediately and
+ * revalidated in background, see RFC 5861</li>
+ * <li>Expired response is revalidated by If-None-Match and If-Modified-Since, 304 just extends its expired time</li>
+ * <li>If get from network fail and expired response is in stale-if-error of its cache-control, it's returned</li>
+ * </ul>
+ * <ul>
+ * <strong>Request coalescing</strong>
+ * <li>Concurrent {@link #httpGet(HttpRequest)} of the same url which is not in cache share one network request and
+ * one db write, see {@link #getFromNetwork(String, boolean)}</li>
  * </ul>
  * <ul>
  * <strong>Get data asynchronous</strong>
@@ -49,24 +73,48 @@ import cn.trinea.android.common.util.SystemUtils;
  */
 public class HttpCache {
 
-    private Context                   context;
+    private Context                           context;
 
-    /** http memory cache **/
-    private Map<String, HttpResponse> cache;
+    /** http memory cache, LRU and bounded by count and bytes **/
+    private SimpleCache<String, HttpResponse> cache;
     /** dao to get data from http db cache **/
-    private HttpCacheDao              httpCacheDao;
-    private int                       type                 = -1;
+    private HttpCacheDao                      httpCacheDao;
+    private int                               type                     = -1;
+    /** requests which are getting from network, key is url, used to share one request by concurrent callers **/
+    private Map<String, InFlightRequest>      inFlightRequests         = new HashMap<String, InFlightRequest>();
+
+    /** default maximum count of responses in memory cache **/
+    public static final int                   DEFAULT_MEMORY_MAX_SIZE  = 128;
+    /** default maximum bytes of responses in memory cache **/
+    public static final long                  DEFAULT_MEMORY_MAX_BYTES = 2 * 1024 * 1024;
 
     /** Default {@link Executor} that be used to execute tasks in parallel. **/
-    public static final Executor      THREAD_POOL_EXECUTOR = Executors
-                                                                   .newFixedThreadPool(SystemUtils.DEFAULT_THREAD_POOL_SIZE);
+    public static final Executor              THREAD_POOL_EXECUTOR     = Executors
+                                                                               .newFixedThreadPool(SystemUtils.DEFAULT_THREAD_POOL_SIZE);
 
+    /**
+     * memory cache contains at most {@link #DEFAULT_MEMORY_MAX_SIZE} responses and {@link #DEFAULT_MEMORY_MAX_BYTES}
+     * bytes
+     * 
+     * @param context
+     */
     public HttpCache(Context context) {
+        this(context, DEFAULT_MEMORY_MAX_SIZE, DEFAULT_MEMORY_MAX_BYTES);
+    }
+
+    /**
+     * @param context
+     * @param memoryMaxSize maximum count of responses in memory cache
+     * @param memoryMaxBytes maximum bytes of responses in memory cache, not limited if not greater than 0
+     */
+    public HttpCache(Context context, int memoryMaxSize, long memoryMaxBytes) {
         if (context == null) {
             throw new IllegalArgumentException("The context can not be null.");
         }
         this.context = context;
-        cache = new ConcurrentHashMap<String, HttpResponse>();
+        cache = new SimpleCache<String, HttpResponse>(memoryMaxSize);
+        cache.setCacheFullRemoveType(new RemoveTypeLastUsedTimeFirst<HttpResponse>());
+        cache.setMaxBytes(memoryMaxBytes);
         httpCacheDao = new HttpCacheDaoImpl(SqliteUtils.getInstance(context));
     }
 
@@ -88,12 +136,54 @@ public class HttpCache {
      * @param type
      */
     private void initData(int type) {
-        this.cache = httpCacheDao.getHttpResponsesByType(type);
-        if (cache == null) {
-            cache = new HashMap<String, HttpResponse>();
+        Map<String, HttpResponse> httpResponseMap = httpCacheDao.getHttpResponsesByType(type);
+        if (httpResponseMap != null) {
+            for (Map.Entry<String, HttpResponse> entry : httpResponseMap.entrySet()) {
+                putIntoMemory(entry.getKey(), entry.getValue());
+            }
         }
     }
 
+    /**
+     * get maximum count of responses in memory cache
+     * 
+     * @return
+     */
+    public int getMemoryMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * get maximum bytes of responses in memory cache
+     * 
+     * @return
+     */
+    public long getMemoryMaxBytes() {
+        return cache.getMaxBytes();
+    }
+
+    /**
+     * set maximum bytes of responses in memory cache, least recently used responses will be removed from memory if
+     * bytes of memory cache is greater than it
+     * 
+     * @param memoryMaxBytes not limited if not greater than 0
+     */
+    public void setMemoryMaxBytes(long memoryMaxBytes) {
+        cache.setMaxBytes(memoryMaxBytes);
+        if (memoryMaxBytes > 0) {
+            cache.trimToBytes(memoryMaxBytes);
+        }
+    }
+
+    /**
+     * get bytes of responses in memory cache, size of a response is estimated by its url and body
+     * 
+     * @return
+     */
+    public long getMemoryBytes() {
+        return cache.getCurrentBytes();
+    }
+
     /**
      * http get
      * <ul>
@@ -134,10 +224,181 @@ public class HttpCache {
             }
         }
         if (!isNoCache) {
-            cacheResponse = getFromCache(url);
+            cacheResponse = getCacheResponse(url);
+            if (cacheResponse != null) {
+                if (!cacheResponse.isExpired()) {
+                    return cacheResponse.setInCache(true);
+                }
+                // serve expired response immediately and revalidate in background
+                if (!isNoStore && cacheResponse.isInStaleWhileRevalidate()) {
+                    revalidateInBackground(url);
+                    return cacheResponse.setInCache(true);
+                }
+            }
+        }
+        return isNoStore ? HttpUtils.httpGet(url) : getFromNetwork(url, isNoCache);
+    }
+
+    /**
+     * get response from network and put it into cache
+     * <ul>
+     * <li>If there is already a request of the url in flight, wait for it and share its response rather than sending
+     * a new request</li>
+     * <li>If isNoCache, only share the request in flight which started after this called, otherwise send a new
+     * request, because response of the former may be got from cache</li>
+     * <li>If the request in flight is a revalidation still queued in thread pool, send it in this thread rather than
+     * wait, so callers in the same thread pool never wait for a request that can not run</li>
+     * </ul>
+     * 
+     * @param url
+     * @param isNoCache whether no-cache in cache-control of request
+     * @return the response of the url, if null represents http error or interrupted when waiting
+     */
+    private HttpResponse getFromNetwork(String url, boolean isNoCache) {
+        InFlightRequest request = new InFlightRequest();
+        InFlightRequest inFlightRequest = addInFlightRequest(url, request);
+        if (inFlightRequest == null) {
+            request.start();
+            return getFromNetwork(url, request, isNoCache);
+        }
+        if (!isNoCache || inFlightRequest.startTime - request.startTime >= 0) {
+            return inFlightRequest.start() ? getFromNetwork(url, inFlightRequest, isNoCache) : inFlightRequest.await();
         }
-        return cacheResponse == null ? (isNoStore ? HttpUtils.httpGet(url) : putIntoCache(HttpUtils.httpGet(url)))
-                : cacheResponse;
+        // not added to inFlightRequests, so it's not shared
+        return getFromNetwork(url, new InFlightRequest(), true);
+    }
+
+    /**
+     * revalidate response of the url in background, do nothing if there is already a request of the url in flight
+     * <ul>
+     * <li>If a caller of the url comes before it runs, it's sent in the thread of that caller, see
+     * {@link #getFromNetwork(String, boolean)}</li>
+     * </ul>
+     * 
+     * @param url
+     */
+    private void revalidateInBackground(final String url) {
+        final InFlightRequest request = new InFlightRequest();
+        if (addInFlightRequest(url, request) != null) {
+            return;
+        }
+
+        THREAD_POOL_EXECUTOR.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                if (request.start()) {
+                    getFromNetwork(url, request, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * add request of the url into inFlightRequests if there is no request of the url in flight
+     * 
+     * @param url
+     * @param request
+     * @return the request in flight, null if request is added
+     */
+    private InFlightRequest addInFlightRequest(String url, InFlightRequest request) {
+        synchronized (inFlightRequests) {
+            InFlightRequest inFlightRequest = inFlightRequests.get(url);
+            if (inFlightRequest == null) {
+                inFlightRequests.put(url, request);
+            }
+            return inFlightRequest;
+        }
+    }
+
+    /**
+     * get response from network for the request in flight, then remove it from inFlightRequests and wake up callers
+     * waiting for it
+     * <ul>
+     * <li>If response in cache has ETag or Last-Modified, send conditional request, if 304 returned, just extend
+     * expired time of response in cache</li>
+     * <li>If get from network fail and response in cache is in stale-if-error, return response in cache</li>
+     * </ul>
+     * 
+     * @param url
+     * @param request request added to inFlightRequests
+     * @param isNoCache whether no-cache in cache-control of request, if true, response in cache is not returned even
+     *        if it's not expired
+     * @return
+     */
+    private HttpResponse getFromNetwork(String url, InFlightRequest request, boolean isNoCache) {
+        try {
+            // another request of the url may finish between cache miss and being put into inFlightRequests
+            HttpResponse cacheResponse = getCacheResponse(url);
+            if (!isNoCache && cacheResponse != null && !cacheResponse.isExpired()) {
+                request.response = cacheResponse.setInCache(true);
+                return request.response;
+            }
+
+            HttpRequest httpRequest = new HttpRequest(url);
+            if (cacheResponse != null) {
+                if (!StringUtils.isEmpty(cacheResponse.getETag())) {
+                    httpRequest.setRequestProperty("If-None-Match", cacheResponse.getETag());
+                }
+                if (!StringUtils.isEmpty(cacheResponse.getLastModified())) {
+                    httpRequest.setRequestProperty("If-Modified-Since", cacheResponse.getLastModified());
+                }
+            }
+            HttpResponse response = HttpUtils.httpGet(httpRequest);
+            if (response == null) {
+                request.response = (cacheResponse != null && cacheResponse.isInStaleIfError()) ? cacheResponse
+                        .setInCache(true) : null;
+            } else if (cacheResponse != null && response.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                request.response = putIntoCache(refresh(cacheResponse, response));
+            } else {
+                request.response = putIntoCache(response);
+            }
+            return request.response;
+        } finally {
+            synchronized (inFlightRequests) {
+                if (inFlightRequests.get(url) == request) {
+                    inFlightRequests.remove(url);
+                }
+            }
+            request.latch.countDown();
+        }
+    }
+
+    /**
+     * refresh response in cache by 304 response, extend its expired time and update its validators
+     * <ul>
+     * <li>If 304 response has no Cache-Control or Expires, expired time is computed by max-age of response in cache
+     * relative to now, see RFC 7234 section 4.3.4</li>
+     * </ul>
+     * 
+     * @param cacheResponse
+     * @param notModifiedResponse
+     * @return cacheResponse
+     */
+    private static HttpResponse refresh(HttpResponse cacheResponse, HttpResponse notModifiedResponse) {
+        if (!StringUtils.isEmpty(notModifiedResponse.getETag())) {
+            cacheResponse.setResponseHeader(HttpConstants.ETAG, notModifiedResponse.getETag());
+        }
+        if (!StringUtils.isEmpty(notModifiedResponse.getLastModified())) {
+            cacheResponse.setResponseHeader(HttpConstants.LAST_MODIFIED, notModifiedResponse.getLastModified());
+        }
+        if (!StringUtils.isEmpty(notModifiedResponse.getCacheControl())) {
+            cacheResponse.setResponseHeader(HttpConstants.CACHE_CONTROL, notModifiedResponse.getCacheControl());
+        }
+        if (notModifiedResponse.getStaleWhileRevalidate() != -1) {
+            cacheResponse.setStaleWhileRevalidate(notModifiedResponse.getStaleWhileRevalidate());
+        }
+        if (notModifiedResponse.getStaleIfError() != -1) {
+            cacheResponse.setStaleIfError(notModifiedResponse.getStaleIfError());
+        }
+        long expiredTime = notModifiedResponse.getExpiredTime();
+        if (expiredTime == -1) {
+            expiredTime = cacheResponse.getExpiresInMillisByMaxAge();
+        }
+        if (expiredTime != -1) {
+            cacheResponse.setExpiredTime(expiredTime);
+        }
+        return cacheResponse.setInCache(true);
     }
 
     /**
@@ -298,8 +559,7 @@ public class HttpCache {
     /**
      * put response into cache
      * <ul>
-     * <li>put response to db, if {@link HttpResponse#getType()} == {@link HttpCache#getType()}, also put into memory
-     * cache</li>
+     * <li>put response to memory cache and db</li>
      * </ul>
      * 
      * @param httpResponse
@@ -311,9 +571,7 @@ public class HttpCache {
             return null;
         }
 
-        if (type != -1 && type == httpResponse.getType()) {
-            cache.put(url, httpResponse);
-        }
+        putIntoMemory(url, httpResponse);
         return (httpCacheDao.insertHttpResponse(httpResponse) == -1) ? null : httpResponse;
     }
 
@@ -331,11 +589,115 @@ public class HttpCache {
             return null;
         }
 
-        HttpResponse cacheResponse = cache.get(url);
+        HttpResponse cacheResponse = getCacheResponse(url);
+        return (cacheResponse == null || cacheResponse.isExpired()) ? null : cacheResponse.setInCache(true);
+    }
+
+    /**
+     * get from memory cache first, if not exist in memory cache, get from db and put it into memory cache
+     * <ul>
+     * <li>expired response is also returned, it can be used in stale time or to revalidate by its ETag and
+     * Last-Modified</li>
+     * </ul>
+     * 
+     * @param url
+     * @return null if neither exit in memory cache nor db
+     */
+    private HttpResponse getCacheResponse(String url) {
+        CacheObject<HttpResponse> o = cache.get(url);
+        HttpResponse cacheResponse = (o == null ? null : o.getData());
         if (cacheResponse == null) {
             cacheResponse = httpCacheDao.getHttpResponse(url);
+            if (cacheResponse != null) {
+                putIntoMemory(url, cacheResponse);
+            }
+        }
+        return cacheResponse;
+    }
+
+    /**
+     * put response into memory cache
+     * <ul>
+     * <li>If size of response is greater than {@link #getMemoryMaxBytes()}, it's not put into memory cache</li>
+     * </ul>
+     * 
+     * @param url
+     * @param httpResponse
+     */
+    private void putIntoMemory(String url, HttpResponse httpResponse) {
+        long size = getSizeOf(httpResponse);
+        long maxBytes = cache.getMaxBytes();
+        if (maxBytes > 0 && size > maxBytes) {
+            cache.remove(url);
+            return;
+        }
+
+        CacheObject<HttpResponse> o = new CacheObject<HttpResponse>(httpResponse);
+        o.setSize(size);
+        cache.put(url, o);
+    }
+
+    /**
+     * estimate bytes of response in memory, two bytes per char of url and body, plus body bytes
+     * 
+     * @param httpResponse
+     * @return
+     */
+    private static long getSizeOf(HttpResponse httpResponse) {
+        long size = 0;
+        if (httpResponse.getUrl() != null) {
+            size += httpResponse.getUrl().length() * 2;
+        }
+        if (httpResponse.getResponseBody() != null) {
+            size += httpResponse.getResponseBody().length() * 2;
+        }
+        if (httpResponse.getResponseBytes() != null) {
+            size += httpResponse.getResponseBytes().length;
+        }
+        return size;
+    }
+
+    /**
+     * request in flight, callers of the same url wait for its response
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-7-2
+     */
+    private static class InFlightRequest {
+
+        private final CountDownLatch  latch     = new CountDownLatch(1);
+        /** time created, in nanos **/
+        private final long            startTime = System.nanoTime();
+        private volatile HttpResponse response;
+        /** whether it has been sent by a thread **/
+        private boolean               isStarted;
+
+        /**
+         * mark it sent by current thread if it has not been sent
+         * 
+         * @return whether current thread should send it
+         */
+        public synchronized boolean start() {
+            if (isStarted) {
+                return false;
+            }
+            isStarted = true;
+            return true;
+        }
+
+        /**
+         * wait for response
+         * 
+         * @return response, null if http error or interrupted
+         */
+        public HttpResponse await() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return response;
         }
-        return (cacheResponse == null || cacheResponse.isExpired()) ? null : cacheResponse.setInCache(true);
     }
 
     /**
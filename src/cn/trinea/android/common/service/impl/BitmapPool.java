@@ -0,0 +1,431 @@
+package cn.trinea.android.common.service.impl;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import cn.trinea.android.common.util.ImageUtils;
+
+/**
+ * Bitmap pool, restore bitmaps no longer used and reuse them when decode image by
+ * {@link BitmapFactory.Options#inBitmap}, to reduce memory allocation and gc
+ * <ul>
+ * <li>{@link #put(Bitmap)} put a bitmap no longer used into pool</li>
+ * <li>{@link #get(int, int, Bitmap.Config, int)} get a bitmap which can be reused to decode image of the size</li>
+ * <li>{@link #decodeFile(String, int)}, {@link #decodeByteArray(byte[], int)}, {@link #decodeStream(InputStream, int)}
+ * decode image and reuse bitmap of pool if possible, overloads with reqWidth and reqHeight decode image to target
+ * size</li>
+ * <li>{@link #clear()} clear pool</li>
+ * </ul>
+ * <ul>
+ * <strong>Attentions:</strong>
+ * <li>Only works on Android 3.0 and above, bitmaps is not reused below.</li>
+ * <li>Below Android 4.4, only bitmap with the same width, height and config can be reused, and inSampleSize must be
+ * 1. Since Android 4.4, bitmap whose byte count is not less than the decoded one can be reused.</li>
+ * <li>Bitmap put into pool may be overwritten at any time, so make sure it's not used any more, such as displayed by
+ * a view.</li>
+ * </ul>
+ * 
+ * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-5-20
+ */
+public class BitmapPool {
+
+    /** default max bytes of pool, 4MB **/
+    public static final int                            DEFAULT_MAX_BYTES     = 4 * 1024 * 1024;
+    /** a reused bitmap can not be larger than this multiple of the decoded one, to avoid wasting memory **/
+    private static final int                           MAX_SIZE_MULTIPLE     = 4;
+    /** sdk version of Android 4.4 **/
+    private static final int                           SDK_VERSION_KITKAT    = 19;
+    /** Bitmap#getAllocationByteCount() since Android 4.4, null if not exist **/
+    private static final Method                        ALLOCATION_BYTE_COUNT = getAllocationByteCountMethod();
+
+    private int                                        maxBytes;
+    private int                                        currentBytes;
+    /** key is byte count of bitmap, value is bitmaps of the byte count **/
+    private TreeMap<Integer, LinkedList<Bitmap>>       bitmapMap             = new TreeMap<Integer, LinkedList<Bitmap>>();
+    /** bitmaps in order of put, used to remove the eldest when pool is full **/
+    private LinkedList<Bitmap>                         bitmapList            = new LinkedList<Bitmap>();
+
+    /**
+     * max bytes of pool is {@link #DEFAULT_MAX_BYTES}
+     */
+    public BitmapPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes max bytes of pool
+     */
+    public BitmapPool(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The maxBytes of pool must be greater than 0.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * whether bitmap reuse is supported by current system
+     * 
+     * @return
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * put a bitmap into pool
+     * <ul>
+     * <li>bitmap which is null, recycled, immutable or larger than max bytes of pool will not be put</li>
+     * <li>if pool is full, the eldest bitmap will be removed</li>
+     * </ul>
+     * 
+     * @param bitmap
+     * @return whether bitmap is put into pool
+     */
+    public synchronized boolean put(Bitmap bitmap) {
+        if (!isSupported() || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return false;
+        }
+
+        int size = getByteCount(bitmap);
+        if (size <= 0 || size > maxBytes) {
+            return false;
+        }
+
+        LinkedList<Bitmap> bitmaps = bitmapMap.get(size);
+        if (bitmaps == null) {
+            bitmaps = new LinkedList<Bitmap>();
+            bitmapMap.put(size, bitmaps);
+        } else if (bitmaps.contains(bitmap)) {
+            return true;
+        }
+        bitmaps.add(bitmap);
+        bitmapList.add(bitmap);
+        currentBytes += size;
+
+        while (currentBytes > maxBytes && !bitmapList.isEmpty()) {
+            removeFromMap(bitmapList.removeFirst());
+        }
+        return true;
+    }
+
+    /**
+     * get a bitmap which can be reused to decode image of the size, and remove it from pool
+     * 
+     * @param width width of image
+     * @param height height of image
+     * @param config config of decoded bitmap, null means {@link Bitmap.Config#ARGB_8888}
+     * @param inSampleSize inSampleSize of decoding
+     * @return null if not exist
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config, int inSampleSize) {
+        if (!isSupported() || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        if (config == null) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        if (Build.VERSION.SDK_INT < SDK_VERSION_KITKAT) {
+            if (inSampleSize > 1) {
+                return null;
+            }
+
+            LinkedList<Bitmap> bitmaps = bitmapMap.get(width * height * getBytesPerPixel(config));
+            if (bitmaps != null) {
+                for (Bitmap bitmap : bitmaps) {
+                    if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                        remove(bitmap);
+                        return bitmap;
+                    }
+                }
+            }
+            return null;
+        }
+
+        if (inSampleSize > 1) {
+            width = (width + inSampleSize - 1) / inSampleSize;
+            height = (height + inSampleSize - 1) / inSampleSize;
+        }
+        int size = width * height * getBytesPerPixel(config);
+        Map.Entry<Integer, LinkedList<Bitmap>> entry = bitmapMap.ceilingEntry(size);
+        if (entry == null || entry.getKey() > (long)size * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+        Bitmap bitmap = entry.getValue().getFirst();
+        remove(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * decode image file, reuse bitmap of pool if possible
+     * 
+     * @param filePath
+     * @param inSampleSize inSampleSize of decoding, not greater than 1 means not sample
+     * @return null if decode failed
+     */
+    public Bitmap decodeFile(String filePath, int inSampleSize) {
+        return decode(filePath, null, null, inSampleSize, 0, 0);
+    }
+
+    /**
+     * decode image file with a sample size calculated from target size, reuse bitmap of pool if possible
+     * 
+     * @param filePath
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return null if decode failed
+     * @see ImageUtils#calculateInSampleSize(int, int, int, int)
+     */
+    public Bitmap decodeFile(String filePath, int reqWidth, int reqHeight) {
+        return decode(filePath, null, null, 1, reqWidth, reqHeight);
+    }
+
+    /**
+     * decode image byte array, reuse bitmap of pool if possible
+     * 
+     * @param data
+     * @param inSampleSize inSampleSize of decoding, not greater than 1 means not sample
+     * @return null if decode failed
+     */
+    public Bitmap decodeByteArray(byte[] data, int inSampleSize) {
+        return (data == null || data.length == 0) ? null : decode(null, data, null, inSampleSize, 0, 0);
+    }
+
+    /**
+     * decode image byte array with a sample size calculated from target size, reuse bitmap of pool if possible
+     * 
+     * @param data
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return null if decode failed
+     * @see ImageUtils#calculateInSampleSize(int, int, int, int)
+     */
+    public Bitmap decodeByteArray(byte[] data, int reqWidth, int reqHeight) {
+        return (data == null || data.length == 0) ? null : decode(null, data, null, 1, reqWidth, reqHeight);
+    }
+
+    /**
+     * decode image input stream, reuse bitmap of pool if possible
+     * <ul>
+     * <li>image is decoded from input stream directly, see {@link ImageUtils#getMarkableInputStream(InputStream)}
+     * </li>
+     * <li>you need to close inputStream yourself</li>
+     * </ul>
+     * 
+     * @param inputStream
+     * @param inSampleSize inSampleSize of decoding, not greater than 1 means not sample
+     * @return null if decode failed
+     */
+    public Bitmap decodeStream(InputStream inputStream, int inSampleSize) {
+        return inputStream == null ? null : decode(null, null, ImageUtils.getMarkableInputStream(inputStream),
+                inSampleSize, 0, 0);
+    }
+
+    /**
+     * decode image input stream with a sample size calculated from target size, reuse bitmap of pool if possible
+     * <ul>
+     * <li>image is decoded from input stream directly, see {@link ImageUtils#getMarkableInputStream(InputStream)}
+     * </li>
+     * <li>you need to close inputStream yourself</li>
+     * </ul>
+     * 
+     * @param inputStream
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return null if decode failed
+     * @see ImageUtils#calculateInSampleSize(int, int, int, int)
+     */
+    public Bitmap decodeStream(InputStream inputStream, int reqWidth, int reqHeight) {
+        return inputStream == null ? null : decode(null, null, ImageUtils.getMarkableInputStream(inputStream), 1,
+                reqWidth, reqHeight);
+    }
+
+    /**
+     * clear pool
+     */
+    public synchronized void clear() {
+        bitmapMap.clear();
+        bitmapList.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * get bytes of bitmaps in pool
+     * 
+     * @return
+     */
+    public synchronized int getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * get max bytes of pool
+     * 
+     * @return
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * decode image from file, byte array or input stream
+     * <ul>
+     * <li>decode bounds at first, then get a bitmap to reuse from pool</li>
+     * <li>if decode failed with the reused bitmap, put it back and decode without reusing</li>
+     * <li>input stream is marked by {@link ImageUtils#markInputStream(InputStream)} before decoding which may be
+     * decoded again, so it can always be reset, bytes read are kept only until it's decoded the last time</li>
+     * </ul>
+     * 
+     * @param filePath
+     * @param data used when filePath is null
+     * @param stream markable stream, used when filePath and data are null
+     * @param inSampleSize
+     * @param reqWidth target width, used to calculate inSampleSize if greater than 0
+     * @param reqHeight target height, used to calculate inSampleSize if greater than 0
+     * @return
+     */
+    private Bitmap decode(String filePath, byte[] data, InputStream stream, int inSampleSize, int reqWidth,
+            int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        boolean isTargetSize = (reqWidth > 0 || reqHeight > 0);
+        if (!isSupported() && !isTargetSize) {
+            options.inSampleSize = inSampleSize;
+            return decode(filePath, data, stream, options);
+        }
+
+        options.inJustDecodeBounds = true;
+        if (stream != null) {
+            ImageUtils.markInputStream(stream);
+        }
+        decode(filePath, data, stream, options);
+        if (stream != null && !ImageUtils.resetInputStream(stream)) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        if (isTargetSize) {
+            inSampleSize = ImageUtils.calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        }
+        options.inSampleSize = inSampleSize;
+        Bitmap reusedBitmap = null;
+        if (isSupported()) {
+            options.inMutable = true;
+            reusedBitmap = get(options.outWidth, options.outHeight, options.inPreferredConfig, inSampleSize);
+        }
+        if (reusedBitmap == null) {
+            if (stream != null) {
+                ImageUtils.unmarkInputStream(stream);
+            }
+            return decode(filePath, data, stream, options);
+        }
+
+        // stream is still marked, so it can be decoded again if reusing fail
+        options.inBitmap = reusedBitmap;
+        try {
+            return decode(filePath, data, stream, options);
+        } catch (IllegalArgumentException e) {
+            // image format or size can not reuse the bitmap
+            put(reusedBitmap);
+            options.inBitmap = null;
+            if (stream != null) {
+                if (!ImageUtils.resetInputStream(stream)) {
+                    return null;
+                }
+                ImageUtils.unmarkInputStream(stream);
+            }
+            return decode(filePath, data, stream, options);
+        } finally {
+            if (stream != null) {
+                ImageUtils.unmarkInputStream(stream);
+            }
+        }
+    }
+
+    private static Bitmap decode(String filePath, byte[] data, InputStream stream, BitmapFactory.Options options) {
+        if (filePath != null) {
+            return BitmapFactory.decodeFile(filePath, options);
+        }
+        return data != null ? BitmapFactory.decodeByteArray(data, 0, data.length, options) : BitmapFactory
+                .decodeStream(stream, null, options);
+    }
+
+    /**
+     * remove bitmap from pool
+     * 
+     * @param bitmap
+     */
+    private void remove(Bitmap bitmap) {
+        Iterator<Bitmap> iterator = bitmapList.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == bitmap) {
+                iterator.remove();
+                break;
+            }
+        }
+        removeFromMap(bitmap);
+    }
+
+    /**
+     * remove bitmap from {@link #bitmapMap}
+     * 
+     * @param bitmap
+     */
+    private void removeFromMap(Bitmap bitmap) {
+        int size = getByteCount(bitmap);
+        LinkedList<Bitmap> bitmaps = bitmapMap.get(size);
+        if (bitmaps != null && bitmaps.remove(bitmap)) {
+            currentBytes -= size;
+            if (bitmaps.isEmpty()) {
+                bitmapMap.remove(size);
+            }
+        }
+    }
+
+    /**
+     * get bytes of bitmap memory, it's allocation byte count since Android 4.4, which may be larger than bytes of
+     * current size after bitmap reused to decode a smaller image
+     * 
+     * @param bitmap
+     * @return
+     */
+    private static int getByteCount(Bitmap bitmap) {
+        if (ALLOCATION_BYTE_COUNT != null) {
+            try {
+                return (Integer)ALLOCATION_BYTE_COUNT.invoke(bitmap);
+            } catch (Exception e) {
+                // accept all exception, use bytes of current size
+            }
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static Method getAllocationByteCountMethod() {
+        if (Build.VERSION.SDK_INT < SDK_VERSION_KITKAT) {
+            return null;
+        }
+
+        try {
+            return Bitmap.class.getMethod("getAllocationByteCount");
+        } catch (Exception e) {
+            // accept all exception
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
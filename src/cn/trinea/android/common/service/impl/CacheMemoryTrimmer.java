@@ -0,0 +1,196 @@
+package cn.trinea.android.common.service.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+/**
+ * Trim caches when system asks app to release memory, see {@link ComponentCallbacks2#onTrimMemory(int)}
+ * <ul>
+ * <strong>Usage</strong>
+ * <li>{@link #addCache(SimpleCache)} add cache to trim, cache is weak referenced, such as {@link ImageMemoryCache} and
+ * {@link ImageCache}</li>
+ * <li>{@link #register(Context)} start receiving trim memory events, {@link #unregister()} stop</li>
+ * <li>{@link #setKeepRate(int, double)} set rate of elements kept at the trim memory level</li>
+ * </ul>
+ * <ul>
+ * <strong>Trim rule</strong>
+ * <li>At each trim memory level, size of each cache will be trimmed to its current size multiply the keep rate of the
+ * nearest level not greater than it, see {@link SimpleCache#trimToSize(int)}</li>
+ * <li>Bitmap pool of {@link ImageMemoryCache} will be cleared when trimmed</li>
+ * <li>{@link #onLowMemory()} trims all caches to empty</li>
+ * </ul>
+ * <ul>
+ * <strong>Attentions:</strong>
+ * <li>Only add caches whose elements hold memory. Elements of {@link ImageSDCardCache} are files, files will be deleted
+ * when trimmed</li>
+ * </ul>
+ * 
+ * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-3
+ */
+public class CacheMemoryTrimmer implements ComponentCallbacks2 {
+
+    /** same to ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW which is added in api 16 **/
+    public static final int          TRIM_MEMORY_RUNNING_LOW      = 10;
+    /** same to ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL which is added in api 16 **/
+    public static final int          TRIM_MEMORY_RUNNING_CRITICAL = 15;
+
+    /** caches to trim, weak referenced **/
+    private Set<SimpleCache<?, ?>>   cacheSet                     = Collections
+                                                                          .newSetFromMap(new WeakHashMap<SimpleCache<?, ?>, Boolean>());
+    /** key is trim memory level, value is rate of elements kept **/
+    private TreeMap<Integer, Double> keepRateMap                  = new TreeMap<Integer, Double>();
+    private Context                  context;
+
+    /**
+     * default keep rate
+     * <ul>
+     * <li>{@link #TRIM_MEMORY_RUNNING_LOW}, 0.75</li>
+     * <li>{@link #TRIM_MEMORY_RUNNING_CRITICAL}, 0.5</li>
+     * <li>{@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN}, 0.5</li>
+     * <li>{@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND}, 0.25</li>
+     * <li>{@link ComponentCallbacks2#TRIM_MEMORY_MODERATE}, 0.1</li>
+     * <li>{@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE}, 0</li>
+     * </ul>
+     */
+    public CacheMemoryTrimmer() {
+        keepRateMap.put(TRIM_MEMORY_RUNNING_LOW, 0.75);
+        keepRateMap.put(TRIM_MEMORY_RUNNING_CRITICAL, 0.5);
+        keepRateMap.put(TRIM_MEMORY_UI_HIDDEN, 0.5);
+        keepRateMap.put(TRIM_MEMORY_BACKGROUND, 0.25);
+        keepRateMap.put(TRIM_MEMORY_MODERATE, 0.1);
+        keepRateMap.put(TRIM_MEMORY_COMPLETE, 0d);
+    }
+
+    /**
+     * add cache to trim
+     * 
+     * @param cache
+     */
+    public void addCache(SimpleCache<?, ?> cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("The cache can not be null.");
+        }
+        synchronized (cacheSet) {
+            cacheSet.add(cache);
+        }
+    }
+
+    /**
+     * remove cache
+     * 
+     * @param cache
+     */
+    public void removeCache(SimpleCache<?, ?> cache) {
+        synchronized (cacheSet) {
+            cacheSet.remove(cache);
+        }
+    }
+
+    /**
+     * set rate of elements kept at the trim memory level
+     * 
+     * @param level trim memory level, such as {@link ComponentCallbacks2#TRIM_MEMORY_BACKGROUND}
+     * @param keepRate in [0, 1], 1 means not trim, 0 means trim to empty
+     */
+    public synchronized void setKeepRate(int level, double keepRate) {
+        if (keepRate < 0 || keepRate > 1) {
+            throw new IllegalArgumentException("The keepRate must be in [0, 1].");
+        }
+        keepRateMap.put(level, keepRate);
+    }
+
+    /**
+     * get rate of elements kept at the trim memory level
+     * 
+     * @param level trim memory level
+     * @return keep rate of the nearest level not greater than it, 1 if not exist
+     */
+    public synchronized double getKeepRate(int level) {
+        Map.Entry<Integer, Double> entry = keepRateMap.floorEntry(level);
+        return entry == null ? 1 : entry.getValue();
+    }
+
+    /**
+     * register to application context to receive trim memory events
+     * 
+     * @param context
+     */
+    public synchronized void register(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("The context can not be null.");
+        }
+
+        unregister();
+        Context applicationContext = context.getApplicationContext();
+        this.context = (applicationContext == null ? context : applicationContext);
+        this.context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * unregister from context registered by {@link #register(Context)}
+     */
+    public synchronized void unregister() {
+        if (context != null) {
+            context.unregisterComponentCallbacks(this);
+            context = null;
+        }
+    }
+
+    /**
+     * trim caches according to keep rate of the level
+     * 
+     * @param level trim memory level
+     */
+    public void trim(int level) {
+        trimToRate(getKeepRate(level));
+    }
+
+    /**
+     * trim caches to the rate of their current size
+     * 
+     * @param keepRate
+     */
+    private void trimToRate(double keepRate) {
+        if (keepRate >= 1) {
+            return;
+        }
+
+        SimpleCache<?, ?>[] caches;
+        synchronized (cacheSet) {
+            caches = cacheSet.toArray(new SimpleCache<?, ?>[cacheSet.size()]);
+        }
+        for (SimpleCache<?, ?> cache : caches) {
+            if (cache == null) {
+                continue;
+            }
+
+            cache.trimToSize((int)(cache.getSize() * keepRate));
+            if (cache instanceof ImageMemoryCache) {
+                BitmapPool bitmapPool = ((ImageMemoryCache)cache).getBitmapPool();
+                if (bitmapPool != null) {
+                    bitmapPool.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimToRate(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+}
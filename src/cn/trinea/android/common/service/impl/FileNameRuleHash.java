@@ -0,0 +1,118 @@
+package cn.trinea.android.common.service.impl;
+
+import java.io.File;
+
+import cn.trinea.android.common.service.FileNameRule;
+import cn.trinea.android.common.util.StringUtils;
+
+/**
+ * File name rule, used when saving images in {@link ImageSDCardCache}
+ * <ul>
+ * <li>use 64-bit FNV-1a hash of image url in hex as file name, no regex, so it's much faster than
+ * {@link FileNameRuleImageUrl}</li>
+ * <li>files are put into two levels of shard folders named by the first two hex chars of hash, such as
+ * a/b/ab12cd34ef56ab78.jpg, so there are at most 256 folders and files are distributed evenly in them</li>
+ * <li>use file suffix in url as target file suffix, only letter and number are kept</li>
+ * <li>use {@link #setFileExtension(String)} set file extension</li>
+ * </ul>
+ * <ul>
+ * <strong>Attentions:</strong>
+ * <li>Files of different urls may be the same if their hash collide, it's nearly impossible for 64-bit hash unless
+ * there are billions of images</li>
+ * </ul>
+ * 
+ * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-12
+ */
+public class FileNameRuleHash implements FileNameRule {
+
+    private static final long   serialVersionUID     = 1L;
+
+    /** default file name if image url is empty **/
+    public static final String  DEFAULT_FILE_NAME    = "ImageSDCardCacheFile.jpg";
+    /** max length of file extension **/
+    public static final int     MAX_EXTENSION_LENGTH = 5;
+
+    private static final long   FNV_64_OFFSET_BASIS  = 0xcbf29ce484222325L;
+    private static final long   FNV_64_PRIME         = 0x100000001b3L;
+    private static final char[] HEX_DIGITS           = "0123456789abcdef".toCharArray();
+
+    private String              fileExtension        = null;
+
+    @Override
+    public String getFileName(String imageUrl) {
+        if (StringUtils.isEmpty(imageUrl)) {
+            return DEFAULT_FILE_NAME;
+        }
+
+        long hash = hash(imageUrl);
+        String ext = getExtension(fileExtension == null ? imageUrl : fileExtension, fileExtension == null);
+        StringBuilder fileName = new StringBuilder(24 + ext.length());
+        fileName.append(HEX_DIGITS[(int)(hash >>> 60)]).append(File.separatorChar)
+                .append(HEX_DIGITS[(int)(hash >>> 56) & 0xF]).append(File.separatorChar);
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            fileName.append(HEX_DIGITS[(int)(hash >>> shift) & 0xF]);
+        }
+        if (ext.length() > 0) {
+            fileName.append('.').append(ext);
+        }
+        return fileName.toString();
+    }
+
+    public FileNameRuleHash setFileExtension(String fileExtension) {
+        this.fileExtension = fileExtension;
+        return this;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of string, every char is hashed as two bytes
+     * 
+     * @param s
+     * @return
+     */
+    public static long hash(String s) {
+        long hash = FNV_64_OFFSET_BASIS;
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+            hash ^= (c >>> 8);
+            hash *= FNV_64_PRIME;
+            hash ^= (c & 0xFF);
+            hash *= FNV_64_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * get extension which only contains letter and number
+     * 
+     * @param s
+     * @param isUrl whether s is url, if true, get extension after the last dot of path, else s is extension
+     * @return empty string if no valid extension
+     */
+    private static String getExtension(String s, boolean isUrl) {
+        int start = 0, end = s.length();
+        if (isUrl) {
+            for (int i = 0; i < end; i++) {
+                char c = s.charAt(i);
+                if (c == '?' || c == '#') {
+                    end = i;
+                    break;
+                }
+            }
+            int dot = s.lastIndexOf('.', end - 1);
+            if (dot < 0 || s.lastIndexOf('/', end - 1) > dot) {
+                return "";
+            }
+            start = dot + 1;
+        }
+
+        if (end - start <= 0 || end - start > MAX_EXTENSION_LENGTH) {
+            return "";
+        }
+        for (int i = start; i < end; i++) {
+            if (!Character.isLetterOrDigit(s.charAt(i))) {
+                return "";
+            }
+        }
+        return s.substring(start, end);
+    }
+}
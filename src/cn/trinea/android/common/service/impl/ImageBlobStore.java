@@ -0,0 +1,822 @@
+package cn.trinea.android.common.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+import cn.trinea.android.common.util.FileUtils;
+import cn.trinea.android.common.util.IOUtils;
+
+/**
+ * Blob store for small images, images are appended to large segment files, used by {@link ImageSDCardCache}
+ * <ul>
+ * <strong>Usage</strong>
+ * <li>{@link #ImageBlobStore(String)} and {@link #open()} to init store, open will scan segment files to rebuild index,
+ * so you'd better not do it in main thread</li>
+ * <li>{@link ImageSDCardCache#setBlobStore(ImageBlobStore)} set to image sdcard cache, then images not larger than
+ * {@link #getMaxDataSize()} will be saved in this store rather than separate files</li>
+ * <li>{@link #put(String, byte[])}, {@link #get(String)}, {@link #remove(String)} to operate data</li>
+ * <li>{@link #compact()} rewrite segments which have too many removed data, see {@link #isCompactNeeded()}</li>
+ * <li>{@link #close()} close store</li>
+ * </ul>
+ * <ul>
+ * <strong>Thread safety</strong>
+ * <li>Reads share a read lock, so they are not blocked by each other. Writes hold the write lock</li>
+ * <li>{@link #compact()} holds the write lock for one record at a time, so reads and writes are not blocked while
+ * a whole segment is copied</li>
+ * </ul>
+ * <ul>
+ * <strong>Format</strong>
+ * <li>Segment file is named as segment-id.blob in folder, only the segment of the largest id is appended</li>
+ * <li>Segment file is a list of records, record is magic, type, key length, data length, crc32 of key and data, key,
+ * data. type is put or delete, delete record has no data</li>
+ * <li>Index of key to (segment, offset, length) is kept in memory, data is read by positional {@link FileChannel}
+ * read, so open cost of a file is amortized across thousands of images</li>
+ * <li>Segment is scanned in order when open, later records override former. If the last record is broken, such as app
+ * crashed while writing, it will be truncated</li>
+ * </ul>
+ * 
+ * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-18
+ */
+public class ImageBlobStore {
+
+    private static final String       TAG                   = "ImageBlobStore";
+
+    /** prefix of blob path, see {@link #getBlobPath(String)} **/
+    public static final String        BLOB_PATH_PREFIX      = "blob://";
+    /** default max size of data which can be put **/
+    public static final int           DEFAULT_MAX_DATA_SIZE = 32 * 1024;
+    /** default size of segment file, a new segment will be used when the current one is larger than it **/
+    public static final long          DEFAULT_SEGMENT_SIZE  = 4 * 1024 * 1024;
+    /** default rate, segment whose live data rate is less than it will be compacted **/
+    public static final double        DEFAULT_COMPACT_RATE  = 0.5;
+
+    private static final String       SEGMENT_FILE_PREFIX   = "segment-";
+    private static final String       SEGMENT_FILE_SUFFIX   = ".blob";
+    private static final int          MAGIC                 = 0x494D4742;
+    private static final byte         TYPE_PUT              = 1;
+    private static final byte         TYPE_DELETE           = 2;
+    /** magic 4, type 1, key length 4, data length 4, crc 4 **/
+    private static final int          HEADER_SIZE           = 17;
+    private static final String       KEY_ENCODING          = "UTF-8";
+
+    private final String              folder;
+    /** max size of data which can be put, default is {@link #DEFAULT_MAX_DATA_SIZE} **/
+    private int                       maxDataSize           = DEFAULT_MAX_DATA_SIZE;
+    /** size of segment file, default is {@link #DEFAULT_SEGMENT_SIZE} **/
+    private long                      segmentSize           = DEFAULT_SEGMENT_SIZE;
+    /** segment whose live data rate is less than it will be compacted, default is {@link #DEFAULT_COMPACT_RATE} **/
+    private double                    compactRate           = DEFAULT_COMPACT_RATE;
+
+    /** key is key of data, value is where the data is **/
+    private Map<String, BlobEntry>    indexMap              = new HashMap<String, BlobEntry>();
+    /**
+     * key is key of removed data, value is where the delete record is, only delete records still needed because put
+     * records of the key are in segments
+     **/
+    private Map<String, BlobEntry>    deleteMap             = new HashMap<String, BlobEntry>();
+    /** key is segment id, value is segment **/
+    private TreeMap<Integer, Segment> segmentMap            = new TreeMap<Integer, Segment>();
+    /** segment which is appended **/
+    private Segment                   activeSegment;
+    /** guards index and segments **/
+    private final ReadWriteLock       lock                  = new ReentrantReadWriteLock();
+    /** only one compaction at a time **/
+    private final Object              compactLock           = new Object();
+
+    /**
+     * @param folder folder of segment files, should not be shared with others
+     */
+    public ImageBlobStore(String folder) {
+        if (folder == null || folder.length() == 0) {
+            throw new IllegalArgumentException("The folder can not be null or empty.");
+        }
+        this.folder = new File(folder).getPath();
+    }
+
+    /**
+     * scan segment files to rebuild index, and open store to put and get
+     * 
+     * @throws IOException if create folder or open segment file fail
+     */
+    public void open() throws IOException {
+        lock.writeLock().lock();
+        try {
+            openLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void openLocked() throws IOException {
+        closeLocked();
+        File dir = new File(folder);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("create folder fail, folder is " + folder);
+        }
+
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX)) {
+                    try {
+                        int id = Integer.parseInt(name.substring(SEGMENT_FILE_PREFIX.length(), name.length()
+                                - SEGMENT_FILE_SUFFIX.length()));
+                        segmentMap.put(id, new Segment(id));
+                    } catch (NumberFormatException e) {
+                        // not segment file
+                    }
+                }
+            }
+        }
+
+        for (Segment segment : segmentMap.values()) {
+            // only the last segment may be broken, so check crc of it only
+            scan(segment, segment.id == segmentMap.lastKey());
+        }
+        if (segmentMap.isEmpty()) {
+            activeSegment = new Segment(0);
+            segmentMap.put(activeSegment.id, activeSegment);
+        } else {
+            activeSegment = segmentMap.get(segmentMap.lastKey());
+        }
+    }
+
+    /**
+     * whether store is opened
+     * 
+     * @return
+     */
+    public boolean isOpen() {
+        lock.readLock().lock();
+        try {
+            return activeSegment != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * put data, data of the same key will be overridden
+     * 
+     * @param key
+     * @param data
+     * @throws IllegalArgumentException if key or data is null, or data is larger than {@link #getMaxDataSize()}
+     * @throws IllegalStateException if store is not opened
+     * @throws RuntimeException if write segment file fail
+     */
+    public void put(String key, byte[] data) {
+        if (key == null || data == null) {
+            throw new IllegalArgumentException("The key and data both can not be null.");
+        }
+        if (data.length > maxDataSize) {
+            throw new IllegalArgumentException("The data is larger than maxDataSize.");
+        }
+
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            append(TYPE_PUT, key, data, 0, data.length);
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * get data
+     * 
+     * @param key
+     * @return data, null if not in store
+     * @throws RuntimeException if read segment file fail
+     */
+    public byte[] get(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            BlobEntry entry = indexMap.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            byte[] data = new byte[entry.dataLength];
+            read(segmentMap.get(entry.segmentId).channel, ByteBuffer.wrap(data), entry.dataOffset);
+            return data;
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * whether store contains the key
+     * 
+     * @param key
+     * @return
+     */
+    public boolean containsKey(String key) {
+        if (key == null) {
+            return false;
+        }
+
+        lock.readLock().lock();
+        try {
+            return indexMap.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * get size of data
+     * 
+     * @param key
+     * @return -1 if not in store
+     */
+    public int getDataSize(String key) {
+        if (key == null) {
+            return -1;
+        }
+
+        lock.readLock().lock();
+        try {
+            BlobEntry entry = indexMap.get(key);
+            return entry == null ? -1 : entry.dataLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * remove data, a delete record will be appended
+     * 
+     * @param key
+     * @return whether the key is in store
+     * @throws RuntimeException if write segment file fail
+     */
+    public boolean remove(String key) {
+        if (key == null) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!indexMap.containsKey(key) || activeSegment == null) {
+                return false;
+            }
+            append(TYPE_DELETE, key, null, 0, 0);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * remove all data and delete all segment files
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            boolean isOpen = (activeSegment != null);
+            for (Segment segment : segmentMap.values()) {
+                segment.close();
+                FileUtils.deleteFile(segment.path);
+            }
+            segmentMap.clear();
+            indexMap.clear();
+            deleteMap.clear();
+            activeSegment = null;
+            if (isOpen) {
+                activeSegment = new Segment(0);
+                segmentMap.put(activeSegment.id, activeSegment);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * get count of data in store
+     * 
+     * @return
+     */
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return indexMap.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * get keys of data in store
+     * 
+     * @return a copy of keys
+     */
+    public List<String> getKeys() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<String>(indexMap.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * whether there is segment whose live data rate is less than {@link #getCompactRate()}
+     * 
+     * @return
+     */
+    public boolean isCompactNeeded() {
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segmentMap.values()) {
+                if (isCompactNeeded(segment)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * compact segments whose live data rate is less than {@link #getCompactRate()}, live data of them are appended to
+     * the active segment, then they are deleted
+     * <ul>
+     * <li>Segments are compacted record by record, the write lock is released between records</li>
+     * <li>Only one compaction runs at a time, others wait for it</li>
+     * </ul>
+     * 
+     * @return count of segments compacted
+     * @throws RuntimeException if read or write segment file fail
+     */
+    public int compact() {
+        synchronized (compactLock) {
+            List<Segment> segmentList = new ArrayList<Segment>();
+            lock.readLock().lock();
+            try {
+                for (Segment segment : segmentMap.values()) {
+                    if (isCompactNeeded(segment)) {
+                        segmentList.add(segment);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            int count = 0;
+            try {
+                for (Segment segment : segmentList) {
+                    if (compact(segment)) {
+                        count++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("IOException occurred. ", e);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * close store, store can be opened again by {@link #open()}
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closeLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeLocked() {
+        for (Segment segment : segmentMap.values()) {
+            segment.close();
+        }
+        segmentMap.clear();
+        indexMap.clear();
+        deleteMap.clear();
+        activeSegment = null;
+    }
+
+    /**
+     * get folder of segment files
+     * 
+     * @return
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    /**
+     * get max size of data which can be put, default is {@link #DEFAULT_MAX_DATA_SIZE}
+     * 
+     * @return
+     */
+    public int getMaxDataSize() {
+        return maxDataSize;
+    }
+
+    /**
+     * set max size of data which can be put, default is {@link #DEFAULT_MAX_DATA_SIZE}
+     * 
+     * @param maxDataSize
+     */
+    public void setMaxDataSize(int maxDataSize) {
+        if (maxDataSize <= 0) {
+            throw new IllegalArgumentException("The maxDataSize must be greater than 0.");
+        }
+        this.maxDataSize = maxDataSize;
+    }
+
+    /**
+     * get size of segment file, default is {@link #DEFAULT_SEGMENT_SIZE}
+     * 
+     * @return
+     */
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * set size of segment file, a new segment will be used when the current one is larger than it, default is
+     * {@link #DEFAULT_SEGMENT_SIZE}
+     * 
+     * @param segmentSize
+     */
+    public void setSegmentSize(long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("The segmentSize must be greater than 0.");
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * get rate, segment whose live data rate is less than it will be compacted, default is
+     * {@link #DEFAULT_COMPACT_RATE}
+     * 
+     * @return
+     */
+    public double getCompactRate() {
+        return compactRate;
+    }
+
+    /**
+     * set rate, segment whose live data rate is less than it will be compacted, default is
+     * {@link #DEFAULT_COMPACT_RATE}
+     * 
+     * @param compactRate
+     */
+    public void setCompactRate(double compactRate) {
+        if (compactRate < 0 || compactRate > 1) {
+            throw new IllegalArgumentException("The compactRate must be between 0 and 1.");
+        }
+        this.compactRate = compactRate;
+    }
+
+    /**
+     * whether path is blob path
+     * 
+     * @param path
+     * @return
+     * @see #getBlobPath(String)
+     */
+    public static boolean isBlobPath(String path) {
+        return path != null && path.startsWith(BLOB_PATH_PREFIX);
+    }
+
+    /**
+     * get blob path of key, used as image path in {@link ImageSDCardCache}
+     * 
+     * @param key
+     * @return {@link #BLOB_PATH_PREFIX} append key
+     */
+    public static String getBlobPath(String key) {
+        return BLOB_PATH_PREFIX + key;
+    }
+
+    /**
+     * get key of blob path
+     * 
+     * @param blobPath
+     * @return null if not blob path
+     * @see #getBlobPath(String)
+     */
+    public static String getKey(String blobPath) {
+        return isBlobPath(blobPath) ? blobPath.substring(BLOB_PATH_PREFIX.length()) : null;
+    }
+
+    private void checkOpen() {
+        if (activeSegment == null) {
+            throw new IllegalStateException("The store is not opened.");
+        }
+    }
+
+    private boolean isCompactNeeded(Segment segment) {
+        return segment != activeSegment && segment.size > 0 && segment.liveBytes < segment.size * compactRate;
+    }
+
+    /**
+     * append a record to the active segment and update index
+     * 
+     * @param type
+     * @param key
+     * @param data
+     * @param dataOffset
+     * @param dataLength
+     * @throws IOException
+     */
+    private void append(byte type, String key, byte[] data, int dataOffset, int dataLength) throws IOException {
+        if (activeSegment.size >= segmentSize) {
+            Segment segment = new Segment(activeSegment.id + 1);
+            segmentMap.put(segment.id, segment);
+            activeSegment = segment;
+        }
+
+        byte[] keyBytes = getBytes(key);
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        if (dataLength > 0) {
+            crc.update(data, dataOffset, dataLength);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + dataLength);
+        buffer.putInt(MAGIC).put(type).putInt(keyBytes.length).putInt(dataLength).putInt((int)crc.getValue())
+                .put(keyBytes);
+        if (dataLength > 0) {
+            buffer.put(data, dataOffset, dataLength);
+        }
+        buffer.flip();
+
+        long position = activeSegment.size;
+        while (buffer.hasRemaining()) {
+            position += activeSegment.channel.write(buffer, position);
+        }
+        apply(activeSegment, type, key, activeSegment.size, keyBytes.length, dataLength);
+        activeSegment.size = position;
+    }
+
+    /**
+     * update index by record
+     * 
+     * @param segment
+     * @param type
+     * @param key
+     * @param recordOffset
+     * @param keyLength
+     * @param dataLength
+     */
+    private void apply(Segment segment, byte type, String key, long recordOffset, int keyLength, int dataLength) {
+        // the former record of the key is overridden, whether it's put or delete
+        BlobEntry oldEntry = indexMap.remove(key);
+        BlobEntry oldDeleteEntry = deleteMap.remove(key);
+        removeLiveBytes(oldEntry);
+        removeLiveBytes(oldDeleteEntry);
+        int putCount = (oldEntry != null ? oldEntry.putCount : (oldDeleteEntry != null ? oldDeleteEntry.putCount : 0));
+
+        BlobEntry entry = new BlobEntry(segment.id, recordOffset + HEADER_SIZE + keyLength, dataLength,
+                HEADER_SIZE + keyLength + dataLength);
+        if (type == TYPE_PUT) {
+            entry.putCount = putCount + 1;
+            indexMap.put(key, entry);
+            segment.liveBytes += entry.recordLength;
+        } else if (putCount > 0) {
+            entry.putCount = putCount;
+            deleteMap.put(key, entry);
+            segment.liveBytes += entry.recordLength;
+        }
+    }
+
+    /**
+     * a put record of the key is dropped from segments, delete record of the key is not needed when no put record left
+     * 
+     * @param key
+     */
+    private void removePutRecord(String key) {
+        BlobEntry entry = indexMap.get(key);
+        if (entry == null) {
+            entry = deleteMap.get(key);
+            if (entry != null && entry.putCount <= 1) {
+                deleteMap.remove(key);
+                removeLiveBytes(entry);
+                return;
+            }
+        }
+        if (entry != null) {
+            entry.putCount--;
+        }
+    }
+
+    private void removeLiveBytes(BlobEntry entry) {
+        Segment segment = (entry == null ? null : segmentMap.get(entry.segmentId));
+        if (segment != null) {
+            segment.liveBytes -= entry.recordLength;
+        }
+    }
+
+    /**
+     * scan records of segment to rebuild index, broken records at the end will be truncated
+     * 
+     * @param segment
+     * @param isCheckCrc whether check crc of records
+     * @throws IOException
+     */
+    private void scan(Segment segment, boolean isCheckCrc) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long fileSize = segment.channel.size(), position = 0;
+        while (position + HEADER_SIZE <= fileSize) {
+            header.clear();
+            read(segment.channel, header, position);
+            header.flip();
+            int magic = header.getInt();
+            byte type = header.get();
+            int keyLength = header.getInt(), dataLength = header.getInt(), crcValue = header.getInt();
+            if (magic != MAGIC || (type != TYPE_PUT && type != TYPE_DELETE) || keyLength < 0 || dataLength < 0
+                    || position + HEADER_SIZE + keyLength + dataLength > fileSize) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(keyLength + (isCheckCrc ? dataLength : 0));
+            read(segment.channel, body, position + HEADER_SIZE);
+            if (isCheckCrc) {
+                CRC32 crc = new CRC32();
+                crc.update(body.array());
+                if ((int)crc.getValue() != crcValue) {
+                    break;
+                }
+            }
+            apply(segment, type, new String(body.array(), 0, keyLength, KEY_ENCODING), position, keyLength,
+                    dataLength);
+            position += HEADER_SIZE + keyLength + dataLength;
+        }
+
+        if (position < fileSize) {
+            Log.e(TAG, new StringBuilder().append("segment is broken, truncated, path is ").append(segment.path)
+                    .append(", size is ").append(fileSize).append(", valid size is ").append(position).toString());
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    /**
+     * append live records of segment to the active segment, then delete it
+     * <ul>
+     * <li>put record is live if index still points to it</li>
+     * <li>delete record is live if it's the last record of the key and put records of the key are still in segments,
+     * so delete records are dropped once the put records they hide are compacted, rather than copied again and
+     * again</li>
+     * <li>write lock is held for one record at a time</li>
+     * </ul>
+     * 
+     * @param segment
+     * @return whether segment is compacted, false if store is closed or cleared while compacting
+     * @throws IOException
+     */
+    private boolean compact(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (true) {
+            lock.writeLock().lock();
+            try {
+                if (activeSegment == null || segmentMap.get(segment.id) != segment) {
+                    return false;
+                }
+                if (position + HEADER_SIZE > segment.size) {
+                    segment.close();
+                    segmentMap.remove(segment.id);
+                    FileUtils.deleteFile(segment.path);
+                    return true;
+                }
+                position = compactRecord(segment, position, header);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * append the record at position of segment to the active segment if it's live
+     * 
+     * @param segment
+     * @param position
+     * @param header buffer of header
+     * @return position of next record
+     * @throws IOException
+     */
+    private long compactRecord(Segment segment, long position, ByteBuffer header) throws IOException {
+        header.clear();
+        read(segment.channel, header, position);
+        header.flip();
+        header.getInt();
+        byte type = header.get();
+        int keyLength = header.getInt(), dataLength = header.getInt();
+        byte[] keyBytes = new byte[keyLength];
+        read(segment.channel, ByteBuffer.wrap(keyBytes), position + HEADER_SIZE);
+        String key = new String(keyBytes, KEY_ENCODING);
+
+        BlobEntry entry = (type == TYPE_PUT ? indexMap.get(key) : deleteMap.get(key));
+        if (entry != null && entry.segmentId == segment.id && entry.dataOffset == position + HEADER_SIZE + keyLength) {
+            byte[] data = new byte[dataLength];
+            read(segment.channel, ByteBuffer.wrap(data), entry.dataOffset);
+            append(type, key, data, 0, dataLength);
+        }
+        if (type == TYPE_PUT) {
+            removePutRecord(key);
+        }
+        return position + HEADER_SIZE + keyLength + dataLength;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("read segment fail, end of file.");
+            }
+            position += count;
+        }
+    }
+
+    private static byte[] getBytes(String key) {
+        try {
+            return key.getBytes(KEY_ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UnsupportedEncodingException occurred. ", e);
+        }
+    }
+
+    /**
+     * where data or delete record is
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-18
+     */
+    private static class BlobEntry {
+
+        int  segmentId;
+        long dataOffset;
+        int  dataLength;
+        int  recordLength;
+        /** count of put records of the key in segments, including this **/
+        int  putCount;
+
+        public BlobEntry(int segmentId, long dataOffset, int dataLength, int recordLength) {
+            this.segmentId = segmentId;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.recordLength = recordLength;
+        }
+    }
+
+    /**
+     * segment file
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-18
+     */
+    private class Segment {
+
+        int              id;
+        String           path;
+        RandomAccessFile file;
+        FileChannel      channel;
+        /** size of valid records **/
+        long             size;
+        /** size of live records, see {@link ImageBlobStore#compact(Segment)} **/
+        long             liveBytes;
+
+        public Segment(int id) throws IOException {
+            this.id = id;
+            this.path = new StringBuilder(folder).append(File.separator).append(SEGMENT_FILE_PREFIX).append(id)
+                    .append(SEGMENT_FILE_SUFFIX).toString();
+            this.file = new RandomAccessFile(path, "rw");
+            this.channel = file.getChannel();
+            this.size = channel.size();
+        }
+
+        public void close() {
+            IOUtils.close(file);
+        }
+    }
+}
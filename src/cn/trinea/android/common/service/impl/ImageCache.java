@@ -1,8 +1,11 @@
 package cn.trinea.android.common.service.impl;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 import android.content.Context;
@@ -15,6 +18,8 @@ import cn.trinea.android.common.service.CacheFullRemoveType;
 import cn.trinea.android.common.service.FileNameRule;
 import cn.trinea.android.common.service.impl.ImageMemoryCache.OnImageCallbackListener;
 import cn.trinea.android.common.util.FileUtils;
+import cn.trinea.android.common.util.ImageUtils;
+import cn.trinea.android.common.util.SystemUtils;
 
 /**
  * <strong>Image Cache</strong><br/>
@@ -49,6 +54,7 @@ import cn.trinea.android.common.util.FileUtils;
  * <li>{@link #ImageCache(int)}</li>
  * <li>{@link #ImageCache(int, int)}</li>
  * <li>{@link #ImageCache(int, int, int, int)}</li>
+ * <li>{@link #ImageCache(int, Executor, int, Executor, Executor, Executor)}</li>
  * </ul>
  * <ul>
  * <strong>Attentions</strong>
@@ -76,6 +82,12 @@ public class ImageCache extends ImageMemoryCache {
                                                             .append("AndroidCommon").append(File.separator)
                                                             .append("ImageCache").toString();
 
+    /**
+     * thread pool to wait for images got from network by secondary cache, null means getting data thread pool of
+     * primary cache is used
+     **/
+    private transient Executor networkThreadPool;
+
     /**
      * <ul>
      * <li>max size of primary cache is {@link ImageMemoryCache#DEFAULT_MAX_SIZE}, max size of secondary cache is
@@ -141,6 +153,82 @@ public class ImageCache extends ImageMemoryCache {
             int secondaryCacheThreadPoolSize) {
         super(primaryCacheMaxSize, primaryCacheThreadPoolSize);
 
+        initPrimaryCache();
+        initSecondaryCache(new ImageSDCardCache(secondaryCacheMaxSize, secondaryCacheThreadPoolSize));
+    }
+
+    /**
+     * <ul>
+     * <li>Callback interface after image get success is null, can set by
+     * {@link PreloadDataCache#setOnImageCallbackListener(OnImageCallbackListener)}</li>
+     * <li>Get data listener of primary cache is {@link #getOnGetImageListenerOfPrimaryCache()}, you can set by
+     * {@link #setOnGetImageListenerOfPrimaryCache(OnGetDataListener)}, but not recommended, you may destory secondary
+     * cache.</li>
+     * <li>Get data listener of secondary cache is {@link #getOnGetImageListenerOfSecondaryCache()}, you can set by
+     * {@link #setOnGetImageListenerOfSecondaryCache(OnGetDataListener)}.</li>
+     * <li>Elements of the cache will not invalid</li>
+     * <li>Remove type of primary cache is {@link RemoveTypeUsedCountSmall} when cache is full</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Thread pools can be shared app-wide, they will not be shutdown by {@link #shutdownNow()}</li>
+     * <li>Getting data thread pool of primary cache waits for secondary cache, and waiting thread pool waits for
+     * primary cache, so each of the three thread pools should not be the same bounded thread pool with another, or it
+     * may deadlock when all threads are waiting</li>
+     * </ul>
+     * 
+     * @param primaryCacheMaxSize maximum size of the primary cache
+     * @param primaryCacheThreadPool getting data thread pool of the primary cache, which decode image from sdcard
+     * @param secondaryCacheMaxSize maximum size of the secondary cache
+     * @param secondaryCacheThreadPool getting data thread pool of the secondary cache, which download image
+     * @param waitingThreadPool thread pool whose wait for image got, null means create a thread pool of
+     *        {@link SystemUtils#DEFAULT_THREAD_POOL_SIZE} when needed
+     */
+    public ImageCache(int primaryCacheMaxSize, Executor primaryCacheThreadPool, int secondaryCacheMaxSize,
+            Executor secondaryCacheThreadPool, Executor waitingThreadPool) {
+        this(primaryCacheMaxSize, primaryCacheThreadPool, secondaryCacheMaxSize, secondaryCacheThreadPool,
+                waitingThreadPool, null);
+    }
+
+    /**
+     * Images are got in stages, each stage has its own thread pool
+     * <ul>
+     * <li>memory lookup, in caller thread</li>
+     * <li>disk lookup and decode, in primaryCacheThreadPool if image is in secondary cache</li>
+     * <li>network fetch, in secondaryCacheThreadPool, waited in networkThreadPool if image is not in secondary cache,
+     * so images in secondary cache never wait behind network fetches</li>
+     * <li>deliver, waited in waitingThreadPool and called back in main thread</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Thread pools can be shared app-wide, they will not be shutdown by {@link #shutdownNow()}</li>
+     * <li>networkThreadPool waits for secondaryCacheThreadPool, waitingThreadPool waits for the others, so each of the
+     * thread pools should not be the same bounded thread pool with another, or it may deadlock when all threads are
+     * waiting</li>
+     * </ul>
+     * 
+     * @param primaryCacheMaxSize maximum size of the primary cache
+     * @param primaryCacheThreadPool thread pool to decode images in secondary cache
+     * @param secondaryCacheMaxSize maximum size of the secondary cache
+     * @param secondaryCacheThreadPool getting data thread pool of the secondary cache, which download image
+     * @param waitingThreadPool thread pool whose wait for image got, null means create a thread pool of
+     *        {@link SystemUtils#DEFAULT_THREAD_POOL_SIZE} when needed
+     * @param networkThreadPool thread pool to wait for images not in secondary cache and decode them, null means
+     *        primaryCacheThreadPool is used and images in secondary cache may wait behind network fetches
+     */
+    public ImageCache(int primaryCacheMaxSize, Executor primaryCacheThreadPool, int secondaryCacheMaxSize,
+            Executor secondaryCacheThreadPool, Executor waitingThreadPool, Executor networkThreadPool) {
+        super(primaryCacheMaxSize, primaryCacheThreadPool, waitingThreadPool);
+
+        initPrimaryCache();
+        initSecondaryCache(new ImageSDCardCache(secondaryCacheMaxSize, secondaryCacheThreadPool, null));
+        this.networkThreadPool = networkThreadPool;
+    }
+
+    /**
+     * init get data listener and remove type of primary cache
+     */
+    private void initPrimaryCache() {
         setOnGetDataListener(new OnGetDataListener<String, Bitmap>() {
 
             private static final long serialVersionUID = 1L;
@@ -148,14 +236,29 @@ public class ImageCache extends ImageMemoryCache {
             @Override
             public CacheObject<Bitmap> onGetData(String key) {
                 try {
-                    CacheObject<String> object = secondaryCache.get(key);
+                    // key may be image url with target size, secondary cache only use image url
+                    String imageUrl = getImageUrl(key);
+                    int[] size = getTargetSize(key);
+                    CacheObject<String> object = secondaryCache.get(imageUrl);
                     String imagePath = (object == null ? null : object.getData());
-                    if (FileUtils.isFileExist(imagePath)) {
-                        if (compressListener != null) {
+                    if (ImageBlobStore.isBlobPath(imagePath)) {
+                        Bitmap bm = getBitmapFromBlobStore(imagePath, size);
+                        if (bm != null) {
+                            return new CacheObject<Bitmap>(bm);
+                        }
+                        secondaryCache.remove(imageUrl);
+                    } else if (FileUtils.isFileExist(imagePath)) {
+                        if (compressListener != null && size == null) {
                             compressSize = compressListener.getCompressSize(imagePath);
                         }
                         Bitmap bm;
-                        if (compressSize > 1) {
+                        BitmapPool pool = getBitmapPool();
+                        if (size != null) {
+                            bm = (pool == null ? ImageUtils.getBitmapFromFile(imagePath, size[0], size[1]) : pool
+                                    .decodeFile(imagePath, size[0], size[1]));
+                        } else if (pool != null) {
+                            bm = pool.decodeFile(imagePath, compressSize);
+                        } else if (compressSize > 1) {
                             BitmapFactory.Options option = new BitmapFactory.Options();
                             option.inSampleSize = compressSize;
                             bm = BitmapFactory.decodeFile(imagePath, option);
@@ -164,7 +267,7 @@ public class ImageCache extends ImageMemoryCache {
                         }
                         return (bm == null ? null : new CacheObject<Bitmap>(bm));
                     } else {
-                        secondaryCache.remove(key);
+                        secondaryCache.remove(imageUrl);
                     }
                 } catch (OutOfMemoryError e) {
                     e.printStackTrace();
@@ -174,8 +277,43 @@ public class ImageCache extends ImageMemoryCache {
         });
         super.setCheckNetwork(false);
         setCacheFullRemoveType(new RemoveTypeUsedCountSmall<Bitmap>());
+    }
 
-        secondaryCache = new ImageSDCardCache(secondaryCacheMaxSize, secondaryCacheThreadPoolSize);
+    /**
+     * decode image in blob store of secondary cache
+     * 
+     * @param imagePath blob path
+     * @param size target size, null if not set
+     * @return null if image not in blob store
+     */
+    private Bitmap getBitmapFromBlobStore(String imagePath, int[] size) {
+        ImageBlobStore store = secondaryCache.getBlobStore();
+        byte[] data = (store == null ? null : store.get(ImageBlobStore.getKey(imagePath)));
+        if (data == null) {
+            return null;
+        }
+
+        BitmapPool pool = getBitmapPool();
+        if (size != null) {
+            return pool == null ? ImageUtils.getBitmapFromByte(data, size[0], size[1]) : pool.decodeByteArray(data,
+                    size[0], size[1]);
+        }
+        int sampleSize = (compressListener == null ? compressSize : compressListener.getCompressSize(imagePath));
+        if (pool != null) {
+            return pool.decodeByteArray(data, sampleSize);
+        }
+        BitmapFactory.Options option = new BitmapFactory.Options();
+        option.inSampleSize = sampleSize > 1 ? sampleSize : 1;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, option);
+    }
+
+    /**
+     * init secondary cache
+     * 
+     * @param cache
+     */
+    private void initSecondaryCache(ImageSDCardCache cache) {
+        secondaryCache = cache;
         secondaryCache.setCacheFolder(DEFAULT_CACHE_FOLDER);
         secondaryCache.setFileNameRule(new FileNameRuleImageUrl().setFileExtension(""));
     }
@@ -194,6 +332,8 @@ public class ImageCache extends ImageMemoryCache {
      * <ul>
      * <strong>Attentions:</strong>
      * <li>if {@link #setCompressListener(CompressListener)} is set, this function is not work</li>
+     * <li>not work for image got with target size, such as {@link #get(String, int, int, List, View)}, whose
+     * compressSize is calculated from target size</li>
      * </ul>
      * 
      * @param compressSize the compressSize to set
@@ -235,6 +375,8 @@ public class ImageCache extends ImageMemoryCache {
          * <ul>
          * <strong>Attentions:</strong>
          * <li>if this function is set, the function {@link #setCompressSize(String)} is not work</li>
+         * <li>imagePath may be a blob path if {@link ImageCache#setBlobStore(ImageBlobStore)} is set, use
+         * {@link ImageCache#openImage(String)} to read it rather than as a file</li>
          * </ul>
          * 
          * @param imagePath
@@ -315,6 +457,24 @@ public class ImageCache extends ImageMemoryCache {
         return secondaryCache.checkIsNetworkTypeAllowed();
     }
 
+    @Override
+    public long getPreloadByteBudget(int networkType) {
+        return secondaryCache.getPreloadByteBudget(networkType);
+    }
+
+    @Override
+    public void setPreloadByteBudget(int networkTypes, long bytesPerMinute) {
+        secondaryCache.setPreloadByteBudget(networkTypes, bytesPerMinute);
+    }
+
+    /**
+     * images are got by secondary cache, so use the budget of secondary cache
+     */
+    @Override
+    protected double getPreloadBudgetRemainingRate() {
+        return secondaryCache.getPreloadBudgetRemainingRate();
+    }
+
     @Override
     public Context getContext() {
         return secondaryCache.getContext();
@@ -398,6 +558,39 @@ public class ImageCache extends ImageMemoryCache {
         secondaryCache.setFileNameRule(fileNameRule);
     }
 
+    /**
+     * get blob store for small images, default is null
+     * 
+     * @return
+     * @see ImageSDCardCache#getBlobStore()
+     */
+    public ImageBlobStore getBlobStore() {
+        return secondaryCache.getBlobStore();
+    }
+
+    /**
+     * set blob store for small images, images not larger than {@link ImageBlobStore#getMaxDataSize()} will be packed
+     * into segment files of it, default is null
+     * 
+     * @param blobStore
+     * @see ImageSDCardCache#setBlobStore(ImageBlobStore)
+     */
+    public void setBlobStore(ImageBlobStore blobStore) {
+        secondaryCache.setBlobStore(blobStore);
+    }
+
+    /**
+     * open image of image path, image path can be a file path or a blob path
+     * 
+     * @param imagePath
+     * @return input stream of image, you need to close it yourself
+     * @throws FileNotFoundException if image not exist
+     * @see ImageSDCardCache#openImage(String)
+     */
+    public InputStream openImage(String imagePath) throws FileNotFoundException {
+        return secondaryCache.openImage(imagePath);
+    }
+
     /**
      * load all data from db and delete unused file in {@link #getCacheFolder()}
      * <ul>
@@ -473,6 +666,22 @@ public class ImageCache extends ImageMemoryCache {
         return secondaryCache.getImagePath(imageUrl);
     }
 
+    /**
+     * get images in secondary cache in getting data thread pool of primary cache, and others in network thread pool, so
+     * images in secondary cache never wait behind network fetches
+     * <ul>
+     * <li>Network thread pool is only used when injected by
+     * {@link #ImageCache(int, Executor, int, Executor, Executor, Executor)}, so no extra thread pool is created</li>
+     * <li>Images not loaded into secondary cache yet while warming up are got in network thread pool, because db is
+     * not queried here, see {@link ImageSDCardCache#initDataLazily(Context, String)}</li>
+     * </ul>
+     */
+    @Override
+    protected Executor getGetDataThreadPool(String key) {
+        return (networkThreadPool == null || secondaryCache.containsKey(getImageUrl(key))) ? super
+                .getGetDataThreadPool(key) : networkThreadPool;
+    }
+
     /**
      * @see ExecutorService#shutdown()
      */
@@ -1,12 +1,22 @@
 package cn.trinea.android.common.service.impl;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -19,6 +29,7 @@ import cn.trinea.android.common.entity.CacheObject;
 import cn.trinea.android.common.entity.FailedReason;
 import cn.trinea.android.common.entity.FailedReason.FailedType;
 import cn.trinea.android.common.service.CacheFullRemoveType;
+import cn.trinea.android.common.util.IOUtils;
 import cn.trinea.android.common.util.ImageUtils;
 import cn.trinea.android.common.util.SizeUtils;
 import cn.trinea.android.common.util.StringUtils;
@@ -36,6 +47,7 @@ import cn.trinea.android.common.util.SystemUtils;
  * <li>{@link #get(String, List, View)} get image asynchronous and preload other images asynchronous according to
  * urlList</li>
  * <li>{@link #get(String, View)} get image asynchronous</li>
+ * <li>{@link #get(String, int, int, List, View)} get image asynchronous and decode it to target size</li>
  * <li>{@link #setHttpReadTimeOut(int)} set http read image time out, if less than 0, not set. default is not set</li>
  * <li>{@link PreloadDataCache#setContext(Context)} and {@link PreloadDataCache#setAllowedNetworkTypes(int)} restrict
  * the types of networks over which this data can get.</li>
@@ -44,6 +56,8 @@ import cn.trinea.android.common.util.SystemUtils;
  * <li>{@link PreloadDataCache#setOnGetDataListener(OnGetDataListener)} set how to get image, this cache will get image
  * and preload images by it</li>
  * <li>{@link SimpleCache#setCacheFullRemoveType(CacheFullRemoveType)} set remove type when cache is full</li>
+ * <li>{@link #setBitmapPool(BitmapPool)} set pool to reuse bitmaps removed when cache is full</li>
+ * <li>{@link #pause()} and {@link #resume()} pause and resume getting images, see {@link PauseOnScrollListener}</li>
  * <li>other see {@link PreloadDataCache} and {@link SimpleCache}</li>
  * </ul>
  * <ul>
@@ -66,6 +80,11 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
 
     private static final String                  TAG                    = "ImageCache";
 
+    /** separator between image url and target size in key, control character never appears in url **/
+    private static final String                  SIZE_KEY_SEPARATOR     = "\n";
+    /** separator between target width and target height in key **/
+    private static final char                    SIZE_SEPARATOR         = 'x';
+
     /** callback interface when getting image **/
     private OnImageCallbackListener              onImageCallbackListener;
     /** http read image time out, if less than 0, not set. default is not set **/
@@ -84,10 +103,20 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
     private static final int                     WHAT_GET_IMAGE_SUCCESS = 1;
     /** message what for get image failed **/
     private static final int                     WHAT_GET_IMAGE_FAILED  = 2;
+    /** message what for get image cancelled **/
+    private static final int                     WHAT_GET_IMAGE_CANCEL  = 3;
+    /** message what for deliver messages queued **/
+    private static final int                     WHAT_DELIVER_MESSAGES  = 4;
+    /** min interval of delivering messages queued, about a frame, in mills **/
+    private static final long                    DELIVER_INTERVAL       = 16;
+
+    /** pool to reuse bitmaps removed when cache is full, null means not reuse **/
+    private transient BitmapPool                 bitmapPool;
 
     /** thread pool whose wait for data got, attention, not the get data thread pool **/
-    private transient ExecutorService            threadPool             = Executors
-                                                                                .newFixedThreadPool(SystemUtils.DEFAULT_THREAD_POOL_SIZE);
+    private transient Executor                   threadPool;
+    /** whether {@link #threadPool} is created by this cache, only thread pool of this cache will be shutdown **/
+    private transient boolean                    isOwnThreadPool;
     /**
      * key is image url, value is the newest view which waiting for image loaded, used when {@link #isOpenWaitingQueue}
      * is false
@@ -97,8 +126,20 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
      * key is image url, value is view set those waiting for image loaded, used when {@link #isOpenWaitingQueue} is true
      **/
     private transient Map<String, HashSet<View>> viewSetMap;
+    /** key is view, value is image url which the view is waiting for, used to cancel getting when view rebound **/
+    private transient Map<View, String>          viewKeyMap;
+    /** image urls whose getting is cancelled, used to tell waiting thread not to call back failed **/
+    private transient Set<String>                cancelledKeySet;
+    /** key is image url not in cache when paused, value is its url list, will be got when resume **/
+    private transient Map<String, List<String>>  pausedKeyMap;
 
     private transient Handler                    handler;
+    /** messages of image got, delivered to main thread in batch, see {@link #deliverMessage(Message)} **/
+    private transient Queue<Message>             messageQueue;
+    /** whether delivering messages queued has been scheduled **/
+    private transient AtomicBoolean              isDeliverScheduled;
+    /** time of last delivering messages queued, in mills **/
+    private transient volatile long              lastDeliverTime;
 
     /**
      * get image asynchronous. when get image success, it will pass to
@@ -124,9 +165,10 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
      */
     public boolean get(final String imageUrl, final List<String> urlList, final View view) {
         if (onImageCallbackListener != null) {
-            onImageCallbackListener.onPreGet(imageUrl, view);
+            onImageCallbackListener.onPreGet(getImageUrl(imageUrl), view);
         }
 
+        bindView(view, StringUtils.isEmpty(imageUrl) ? null : imageUrl);
         if (StringUtils.isEmpty(imageUrl)) {
             if (onImageCallbackListener != null) {
                 onImageCallbackListener.onGetNotInCache(imageUrl, view);
@@ -141,6 +183,7 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
         if (object != null) {
             Bitmap bitmap = object.getData();
             if (bitmap != null) {
+                unbindView(view, imageUrl);
                 onGetSuccess(imageUrl, bitmap, view, true);
                 return true;
             } else {
@@ -162,16 +205,269 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
         }
 
         if (onImageCallbackListener != null) {
-            onImageCallbackListener.onGetNotInCache(imageUrl, view);
+            onImageCallbackListener.onGetNotInCache(getImageUrl(imageUrl), view);
         }
         if (isExistGettingDataThread(imageUrl)) {
             return false;
         }
 
+        if (isPaused()) {
+            synchronized (pausedKeyMap) {
+                pausedKeyMap.remove(imageUrl);
+                pausedKeyMap.put(imageUrl, urlList);
+            }
+            return false;
+        }
         startGetImageThread(imageUrl, urlList);
         return false;
     }
 
+    /**
+     * resume getting images paused by {@link #pause()}
+     * <ul>
+     * <li>While paused, images in cache are still returned synchronous, images not in cache will not be got and
+     * preloaded</li>
+     * <li>When resume, images which views are still waiting for will be got, others are ignored</li>
+     * </ul>
+     * 
+     * @see PauseOnScrollListener
+     */
+    @Override
+    public void resume() {
+        super.resume();
+
+        Map<String, List<String>> keyMap;
+        synchronized (pausedKeyMap) {
+            if (pausedKeyMap.isEmpty()) {
+                return;
+            }
+            keyMap = new LinkedHashMap<String, List<String>>(pausedKeyMap);
+            pausedKeyMap.clear();
+        }
+        for (Map.Entry<String, List<String>> entry : keyMap.entrySet()) {
+            String key = entry.getKey();
+            if (isViewWaiting(key) && !isExistGettingDataThread(key)) {
+                startGetImageThread(key, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * get image asynchronous and decode it to target size. when get image success, it will pass to
+     * {@link OnImageCallbackListener#onGetSuccess(String, Bitmap, View, boolean)}
+     * 
+     * @param imageUrl
+     * @param width target width, not greater than 0 means not restrict width
+     * @param height target height, not greater than 0 means not restrict height
+     * @param view
+     * @return whether image already in cache or not
+     * @see #get(String, int, int, List, View)
+     */
+    public boolean get(String imageUrl, int width, int height, View view) {
+        return get(imageUrl, width, height, null, view);
+    }
+
+    /**
+     * get image asynchronous and decode it to target size, preload other images of the same target size
+     * asynchronous according to urlList
+     * <ul>
+     * <li>Image is cached by key of image url and target size, see {@link #getSizedKey(String, int, int)}, so
+     * thumbnail and full size image of the same url will be cached separately, each holds only the pixels it needs</li>
+     * <li>Image is decoded with the largest inSampleSize which keeps it not smaller than target size</li>
+     * <li>Callback interface still gets image url, not the key</li>
+     * </ul>
+     * 
+     * @param imageUrl
+     * @param width target width, not greater than 0 means not restrict width
+     * @param height target height, not greater than 0 means not restrict height
+     * @param urlList url list, if is null, not preload, else preload forward by
+     *        {@link PreloadDataCache#preloadDataForward(Object, List, int)}, preload backward by
+     *        {@link PreloadDataCache#preloadDataBackward(Object, List, int)}
+     * @param view
+     * @return whether image already in cache or not
+     */
+    public boolean get(String imageUrl, int width, int height, List<String> urlList, View view) {
+        if (StringUtils.isEmpty(imageUrl) || (width <= 0 && height <= 0)) {
+            return get(imageUrl, urlList, view);
+        }
+
+        List<String> keyList = null;
+        if (urlList != null) {
+            keyList = new ArrayList<String>(urlList.size());
+            for (String url : urlList) {
+                keyList.add(getSizedKey(url, width, height));
+            }
+        }
+        return get(getSizedKey(imageUrl, width, height), keyList, view);
+    }
+
+    /**
+     * bind view to the image url it's waiting for
+     * <ul>
+     * <li>if view was waiting for another image url, it will not be called back for that one</li>
+     * <li>if no view is waiting for that image url any more, getting it will be cancelled if not started, see
+     * {@link PreloadDataCache#cancelGettingData(Object)}</li>
+     * </ul>
+     * 
+     * @param view
+     * @param key image url, or key got by {@link #getSizedKey(String, int, int)}, null means only unbind
+     */
+    private void bindView(View view, String key) {
+        if (view == null) {
+            return;
+        }
+
+        String previousKey;
+        synchronized (viewKeyMap) {
+            previousKey = (key == null ? viewKeyMap.remove(view) : viewKeyMap.put(view, key));
+        }
+        if (previousKey == null || previousKey.equals(key)) {
+            return;
+        }
+
+        boolean isWaiting;
+        if (isOpenWaitingQueue) {
+            synchronized (viewSetMap) {
+                HashSet<View> viewSet = viewSetMap.get(previousKey);
+                if (viewSet != null) {
+                    viewSet.remove(view);
+                    if (viewSet.isEmpty()) {
+                        viewSetMap.remove(previousKey);
+                    }
+                }
+                isWaiting = viewSetMap.containsKey(previousKey);
+            }
+        } else {
+            if (viewMap.get(previousKey) == view) {
+                viewMap.remove(previousKey);
+            }
+            isWaiting = viewMap.containsKey(previousKey);
+        }
+
+        if (!isWaiting) {
+            cancelGettingData(previousKey);
+        }
+    }
+
+    @Override
+    protected void onGettingDataCancelled(String key) {
+        cancelledKeySet.add(key);
+    }
+
+    /**
+     * unbind view if it's bound to the image url
+     * 
+     * @param view
+     * @param key
+     */
+    private void unbindView(View view, String key) {
+        if (view == null) {
+            return;
+        }
+
+        synchronized (viewKeyMap) {
+            if (key.equals(viewKeyMap.get(view))) {
+                viewKeyMap.remove(view);
+            }
+        }
+    }
+
+    /**
+     * whether any view is waiting for the image url
+     * 
+     * @param key
+     * @return
+     */
+    private boolean isViewWaiting(String key) {
+        if (isOpenWaitingQueue) {
+            synchronized (viewSetMap) {
+                return viewSetMap.containsKey(key);
+            }
+        }
+        return viewMap.containsKey(key);
+    }
+
+    /**
+     * get key of image url and target size
+     * 
+     * @param imageUrl
+     * @param width target width, not greater than 0 means not restrict width
+     * @param height target height, not greater than 0 means not restrict height
+     * @return imageUrl if neither width nor height is restricted
+     */
+    public static String getSizedKey(String imageUrl, int width, int height) {
+        if (imageUrl == null || (width <= 0 && height <= 0)) {
+            return imageUrl;
+        }
+
+        return new StringBuilder(imageUrl.length() + 16).append(imageUrl).append(SIZE_KEY_SEPARATOR)
+                .append(width > 0 ? width : 0).append(SIZE_SEPARATOR).append(height > 0 ? height : 0).toString();
+    }
+
+    /**
+     * get image url of key
+     * 
+     * @param key image url or key got by {@link #getSizedKey(String, int, int)}
+     * @return
+     */
+    public static String getImageUrl(String key) {
+        int index = getSizeIndex(key);
+        return index < 0 ? key : key.substring(0, index);
+    }
+
+    /**
+     * get target size of key
+     * 
+     * @param key image url or key got by {@link #getSizedKey(String, int, int)}
+     * @return array of target width and target height, null if key has no target size
+     */
+    static int[] getTargetSize(String key) {
+        int index = getSizeIndex(key);
+        if (index < 0) {
+            return null;
+        }
+
+        int separatorIndex = key.indexOf(SIZE_SEPARATOR, index);
+        return new int[] {Integer.parseInt(key.substring(index + SIZE_KEY_SEPARATOR.length(), separatorIndex)),
+                Integer.parseInt(key.substring(separatorIndex + 1))};
+    }
+
+    /**
+     * get index of {@link #SIZE_KEY_SEPARATOR} in key
+     * 
+     * @param key
+     * @return -1 if key has no target size
+     */
+    private static int getSizeIndex(String key) {
+        if (key == null) {
+            return -1;
+        }
+
+        int index = key.lastIndexOf(SIZE_KEY_SEPARATOR);
+        if (index < 0) {
+            return -1;
+        }
+
+        // target size must be digits separated by SIZE_SEPARATOR
+        int separatorCount = 0, digitCount = 0;
+        for (int i = index + SIZE_KEY_SEPARATOR.length(); i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == SIZE_SEPARATOR) {
+                if (digitCount == 0 || ++separatorCount > 1) {
+                    return -1;
+                }
+                digitCount = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (++digitCount > 9) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return (separatorCount == 1 && digitCount > 0) ? index : -1;
+    }
+
     /**
      * get callback interface when getting image
      * 
@@ -316,11 +612,52 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
     public ImageMemoryCache(int maxSize, int threadPoolSize) {
         super(maxSize, threadPoolSize);
 
+        initCache();
+    }
+
+    /**
+     * <ul>
+     * <li>Get data listener is {@link #getDefaultOnGetImageListener()}</li>
+     * <li>callback interface when getting image is null, can set by
+     * {@link #setOnImageCallbackListener(OnImageCallbackListener)}</li>
+     * <li>Elements of the cache will not invalid</li>
+     * <li>Remove type is {@link RemoveTypeUsedCountSmall} when cache is full</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Thread pools can be shared with other caches, they will not be shutdown by {@link #shutdownNow()}</li>
+     * <li>Waiting thread pool will be blocked until image got by getting data thread pool, so do not use the same
+     * bounded thread pool for them, or it may deadlock when all threads are waiting</li>
+     * </ul>
+     * 
+     * @param maxSize maximum size of the cache
+     * @param getDataThreadPool getting data thread pool
+     * @param waitingThreadPool thread pool whose wait for data got, null means create a thread pool of
+     *        {@link SystemUtils#DEFAULT_THREAD_POOL_SIZE} when needed
+     * @see PreloadDataCache#PreloadDataCache(int, Executor)
+     */
+    public ImageMemoryCache(int maxSize, Executor getDataThreadPool, Executor waitingThreadPool) {
+        super(maxSize, getDataThreadPool);
+
+        initCache();
+        this.threadPool = waitingThreadPool;
+        this.isOwnThreadPool = false;
+    }
+
+    /**
+     * init listeners and containers of cache
+     */
+    private void initCache() {
         super.setOnGetDataListener(getDefaultOnGetImageListener());
         super.setCacheFullRemoveType(new RemoveTypeUsedCountSmall<Bitmap>());
         this.viewMap = new ConcurrentHashMap<String, View>();
         this.viewSetMap = new HashMap<String, HashSet<View>>();
+        this.viewKeyMap = new WeakHashMap<View, String>();
+        this.cancelledKeySet = Collections.synchronizedSet(new HashSet<String>());
+        this.pausedKeyMap = new LinkedHashMap<String, List<String>>();
         this.handler = new MyHandler();
+        this.messageQueue = new ConcurrentLinkedQueue<Message>();
+        this.isDeliverScheduled = new AtomicBoolean(false);
         if (Looper.myLooper() == null) {
             Looper.prepare();
         }
@@ -374,21 +711,100 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
     }
 
     /**
+     * get bitmap pool
+     * 
+     * @return
+     */
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    /**
+     * set bitmap pool, bitmaps removed when cache is full will be put into pool, and reused when decode image. default
+     * is null, means not reuse
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Bitmap removed from cache may be overwritten, so make sure bitmaps removed are not displayed any more, you
+     * can set max size of cache larger than the count of images displayed at the same time</li>
+     * </ul>
+     * 
+     * @param bitmapPool
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    /**
+     * put bitmap into {@link #getBitmapPool()} when full remove one
+     */
+    @Override
+    protected CacheObject<Bitmap> fullRemoveOne() {
+        CacheObject<Bitmap> o = super.fullRemoveOne();
+        BitmapPool pool = bitmapPool;
+        if (o != null && pool != null) {
+            pool.put(o.getData());
+        }
+        return o;
+    }
+
+    /**
+     * get thread pool whose wait for data got, create it if not exist
+     * 
+     * @return
+     */
+    private synchronized Executor getWaitingThreadPool() {
+        if (threadPool == null) {
+            threadPool = Executors.newFixedThreadPool(SystemUtils.DEFAULT_THREAD_POOL_SIZE);
+            isOwnThreadPool = true;
+        }
+        return threadPool;
+    }
+
+    /**
+     * shutdown thread pools if they are created by this cache
+     * 
      * @see ExecutorService#shutdown()
      */
     protected void shutdown() {
-        threadPool.shutdown();
+        synchronized (this) {
+            if (isOwnThreadPool && threadPool != null) {
+                ((ExecutorService)threadPool).shutdown();
+            }
+        }
         super.shutdown();
     }
 
     /**
+     * shutdown thread pools if they are created by this cache
+     * 
      * @see ExecutorService#shutdownNow()
      */
     public List<Runnable> shutdownNow() {
-        threadPool.shutdownNow();
+        synchronized (this) {
+            if (isOwnThreadPool && threadPool != null) {
+                ((ExecutorService)threadPool).shutdownNow();
+            }
+        }
         return super.shutdownNow();
     }
 
+    /**
+     * deliver message of image got to main thread
+     * <ul>
+     * <li>messages are queued and delivered in batch at most once per {@link #DELIVER_INTERVAL}, about a frame, so a
+     * burst of images got will be called back in a single main thread pass rather than one by one</li>
+     * </ul>
+     * 
+     * @param message
+     */
+    private void deliverMessage(Message message) {
+        messageQueue.add(message);
+        if (isDeliverScheduled.compareAndSet(false, true)) {
+            long delay = lastDeliverTime + DELIVER_INTERVAL - System.currentTimeMillis();
+            handler.sendEmptyMessageDelayed(WHAT_DELIVER_MESSAGES, delay > 0 ? delay : 0);
+        }
+    }
+
     /**
      * My handler
      * 
@@ -398,6 +814,19 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
 
         public void handleMessage(Message message) {
             switch (message.what) {
+                case WHAT_DELIVER_MESSAGES:
+                    isDeliverScheduled.set(false);
+                    lastDeliverTime = System.currentTimeMillis();
+                    Message queuedMessage;
+                    while ((queuedMessage = messageQueue.poll()) != null) {
+                        try {
+                            handleMessage(queuedMessage);
+                        } finally {
+                            // queued message is not sent by handler, so return it to message pool here
+                            queuedMessage.recycle();
+                        }
+                    }
+                    break;
                 case WHAT_GET_IMAGE_SUCCESS:
                 case WHAT_GET_IMAGE_FAILED:
                     MessageObject object = (MessageObject)message.obj;
@@ -414,11 +843,12 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
                                 if (viewSet != null) {
                                     for (View view : viewSet) {
                                         if (view != null) {
+                                            unbindView(view, imageUrl);
                                             if (WHAT_GET_IMAGE_SUCCESS == message.what) {
                                                 onGetSuccess(imageUrl, bitmap, view, false);
                                             } else {
-                                                onImageCallbackListener.onGetFailed(imageUrl, bitmap, view,
-                                                        object.failedReason);
+                                                onImageCallbackListener.onGetFailed(getImageUrl(imageUrl), bitmap,
+                                                        view, object.failedReason);
                                             }
                                         }
                                     }
@@ -427,10 +857,12 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
                         } else {
                             View view = viewMap.get(imageUrl);
                             if (view != null) {
+                                unbindView(view, imageUrl);
                                 if (WHAT_GET_IMAGE_SUCCESS == message.what) {
                                     onGetSuccess(imageUrl, bitmap, view, false);
                                 } else {
-                                    onImageCallbackListener.onGetFailed(imageUrl, bitmap, view, object.failedReason);
+                                    onImageCallbackListener.onGetFailed(getImageUrl(imageUrl), bitmap, view,
+                                            object.failedReason);
                                 }
                             }
                         }
@@ -444,15 +876,24 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
                         viewMap.remove(imageUrl);
                     }
                     break;
+                case WHAT_GET_IMAGE_CANCEL:
+                    // view may be bound to the image url again after cancelled, get it again
+                    MessageObject cancelObject = (MessageObject)message.obj;
+                    if (cancelObject != null && isViewWaiting(cancelObject.imageUrl)
+                            && !isExistGettingDataThread(cancelObject.imageUrl)) {
+                        startGetImageThread(cancelObject.imageUrl, null);
+                    }
+                    break;
             }
         }
     };
 
-    private void onGetSuccess(String imageUrl, Bitmap loadedImage, View view, boolean isInCache) {
+    private void onGetSuccess(String key, Bitmap loadedImage, View view, boolean isInCache) {
         if (onImageCallbackListener == null) {
             return;
         }
 
+        String imageUrl = getImageUrl(key);
         try {
             onImageCallbackListener.onGetSuccess(imageUrl, loadedImage, view, isInCache);
         } catch (OutOfMemoryError e) {
@@ -495,28 +936,31 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
      */
     private void startGetImageThread(final String imageUrl, final List<String> urlList) {
         // wait for image be got success and send message
-        threadPool.execute(new Runnable() {
+        getWaitingThreadPool().execute(new Runnable() {
 
             @Override
             public void run() {
                 try {
                     CacheObject<Bitmap> object = get(imageUrl, urlList);
                     Bitmap bitmap = (object == null ? null : object.getData());
-                    if (bitmap == null) {
+                    if (cancelledKeySet.remove(imageUrl) && bitmap == null) {
+                        deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_CANCEL, new MessageObject(imageUrl,
+                                null)));
+                    } else if (bitmap == null) {
                         // if bitmap is null, remove it
                         remove(imageUrl);
                         String failedException = "get image from network or save image to sdcard error. please make sure you have added permission android.permission.WRITE_EXTERNAL_STORAGE and android.permission.ACCESS_NETWORK_STATE";
                         FailedReason failedReason = new FailedReason(FailedType.ERROR_IO, failedException);
-                        handler.sendMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, new MessageObject(imageUrl,
+                        deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, new MessageObject(imageUrl,
                                 bitmap, failedReason)));
                     } else {
-                        handler.sendMessage(handler.obtainMessage(WHAT_GET_IMAGE_SUCCESS, new MessageObject(imageUrl,
+                        deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_SUCCESS, new MessageObject(imageUrl,
                                 bitmap)));
                     }
                 } catch (OutOfMemoryError e) {
                     MessageObject msg = new MessageObject(imageUrl, null, new FailedReason(
                             FailedType.ERROR_OUT_OF_MEMORY, e));
-                    handler.sendMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, msg));
+                    deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, msg));
                 }
             }
         });
@@ -536,7 +980,23 @@ public class ImageMemoryCache extends PreloadDataCache<String, Bitmap> {
             public CacheObject<Bitmap> onGetData(String key) {
                 Bitmap d = null;
                 try {
-                    d = ImageUtils.getBitmapFromUrl(key, httpReadTimeOut, requestProperties);
+                    String imageUrl = getImageUrl(key);
+                    int[] size = getTargetSize(key);
+                    BitmapPool pool = bitmapPool;
+                    if (pool == null) {
+                        d = (size == null ? ImageUtils.getBitmapFromUrl(imageUrl, httpReadTimeOut, requestProperties)
+                                : ImageUtils.getBitmapFromUrl(imageUrl, httpReadTimeOut, requestProperties, size[0],
+                                        size[1]));
+                    } else {
+                        InputStream stream = ImageUtils.getInputStreamFromUrl(imageUrl, httpReadTimeOut,
+                                requestProperties);
+                        try {
+                            d = (size == null ? pool.decodeStream(stream, 1) : pool.decodeStream(stream, size[0],
+                                    size[1]));
+                        } finally {
+                            IOUtils.close(stream);
+                        }
+                    }
                 } catch (Exception e) {
                     Log.e(TAG, "get image exception, imageUrl is:" + key, e);
                 }
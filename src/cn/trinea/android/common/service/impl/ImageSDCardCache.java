@@ -1,23 +1,41 @@
 package cn.trinea.android.common.service.impl;
 
 import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.Context;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import cn.trinea.android.common.constant.HttpConstants;
+import cn.trinea.android.common.dao.ImageSDCardCacheDao;
 import cn.trinea.android.common.dao.impl.ImageSDCardCacheDaoImpl;
 import cn.trinea.android.common.entity.CacheObject;
 import cn.trinea.android.common.entity.FailedReason;
@@ -25,6 +43,8 @@ import cn.trinea.android.common.entity.FailedReason.FailedType;
 import cn.trinea.android.common.service.CacheFullRemoveType;
 import cn.trinea.android.common.service.FileNameRule;
 import cn.trinea.android.common.util.FileUtils;
+import cn.trinea.android.common.util.HttpUtils;
+import cn.trinea.android.common.util.IOUtils;
 import cn.trinea.android.common.util.ImageUtils;
 import cn.trinea.android.common.util.SizeUtils;
 import cn.trinea.android.common.util.SqliteUtils;
@@ -45,16 +65,29 @@ import cn.trinea.android.common.util.SystemUtils;
  * <li>{@link #get(String, View)} get image asynchronous</li>
  * <li>{@link #initData(Context, String)} or {@link #loadDataFromDb(Context, String)} to init data when app start,
  * {@link #saveDataToDb(Context, String)} to save data when app exit</li>
+ * <li>{@link #initDataLazily(Context, String)} to init data in background, image is loaded from db when miss before
+ * all data loaded</li>
+ * <li>{@link #initDataFromJournal(String)} to init data from journal when app start, then every change is appended to
+ * journal, no need to save data when app exit, see {@link ImageSDCardCacheJournal}</li>
  * <li>{@link #setFileNameRule(FileNameRule)} set file name rule which be used when saving images, default is
- * {@link FileNameRuleImageUrl}</li>
+ * {@link FileNameRuleImageUrl}, {@link FileNameRuleHash} is recommended if there are lots of images</li>
  * <li>{@link #setCacheFolder(String)} set cache folder path which be used when saving images, default is
  * {@link #DEFAULT_CACHE_FOLDER}</li>
  * <li>{@link #setHttpReadTimeOut(int)} set http read image time out, if less than 0, not set. default is not set</li>
+ * <li>{@link #setDownloadRetryCount(int)} set retry times when download image fail, default is
+ * {@link #DEFAULT_RETRY_COUNT}</li>
+ * <li>{@link #setBlobStore(ImageBlobStore)} set blob store, small images will be packed into segment files of it</li>
+ * <li>{@link #setRevalidate(boolean)} set whether revalidate expired image by ETag and Last-Modified, default is
+ * true</li>
+ * <li>{@link #setCheckContentLength(boolean)} set whether check length of file downloaded equals to Content-Length,
+ * default is true</li>
  * <li>{@link #setOpenWaitingQueue(boolean)} set whether open waiting queue, default is true. If true, save all view
  * waiting for image loaded, else only save the newest one</li>
  * <li>{@link PreloadDataCache#setOnGetDataListener(OnGetDataListener)} set how to get image, this cache will get image
  * and preload images by it</li>
  * <li>{@link SimpleCache#setCacheFullRemoveType(CacheFullRemoveType)} set remove type when cache is full</li>
+ * <li>{@link SimpleCache#setMaxBytes(long)} set the maximum bytes of image files, files are removed according to
+ * their sizes recorded when downloaded, without touching file system</li>
  * <li>other see {@link PreloadDataCache} and {@link SimpleCache}</li>
  * </ul>
  * <ul>
@@ -93,6 +126,16 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
     private boolean                              isOpenWaitingQueue     = true;
     /** http request properties **/
     private Map<String, String>                  requestProperties      = null;
+    /** retry times when download image fail, default is {@link #DEFAULT_RETRY_COUNT} **/
+    private int                                  downloadRetryCount     = DEFAULT_RETRY_COUNT;
+    /** whether check length of file downloaded equals to Content-Length of response, default is true **/
+    private boolean                              isCheckContentLength   = true;
+    /** whether revalidate expired image by ETag and Last-Modified rather than download again, default is true **/
+    private boolean                              isRevalidate           = true;
+    /** max time of a slice when deleting unused files, in mills, default is {@link #DEFAULT_SLICE_TIME} **/
+    private long                                 sweepSliceTime         = DEFAULT_SLICE_TIME;
+    /** interval between slices when deleting unused files, in mills, default is {@link #DEFAULT_SLICE_INTERVAL} **/
+    private long                                 sweepInterval          = DEFAULT_SLICE_INTERVAL;
 
     /** recommend default max cache size according to dalvik max memory **/
     public static final int                      DEFAULT_MAX_SIZE       = getDefaultMaxSize();
@@ -108,14 +151,42 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
                                                                                 .append(File.separator)
                                                                                 .append("ImageSDCardCache").toString();
 
+    /** default retry times when download image fail **/
+    public static final int                      DEFAULT_RETRY_COUNT    = 1;
+    /** default max time of a slice when deleting unused files, in mills **/
+    public static final long                     DEFAULT_SLICE_TIME     = 20;
+    /** default interval between slices when deleting unused files, in mills **/
+    public static final long                     DEFAULT_SLICE_INTERVAL = 200;
+    /** suffix of temp file which image is downloaded to before renamed to the file in cache **/
+    public static final String                   TEMP_FILE_SUFFIX       = ".tmp";
+    /** temp files modified within it are not deleted by sweeper, in mills, they may belong to downloads in progress **/
+    private static final long                    TEMP_FILE_KEEP_TIME    = 60 * 60 * 1000;
+    /** suffix of validator file which saves ETag and Last-Modified of image file **/
+    public static final String                   VALIDATOR_FILE_SUFFIX  = ".validator";
+    /** size of buffer used when download image **/
+    private static final int                     DOWNLOAD_BUFFER_SIZE   = 16 * 1024;
+    /** buffer used when download image, one per thread, so it's reused by the thread pool **/
+    private static final ThreadLocal<byte[]>     DOWNLOAD_BUFFER        = new ThreadLocal<byte[]>() {
+
+                                                                            @Override
+                                                                            protected byte[] initialValue() {
+                                                                                return new byte[DOWNLOAD_BUFFER_SIZE];
+                                                                            }
+                                                                        };
+
     /** message what for get image successfully **/
     private static final int                     WHAT_GET_IMAGE_SUCCESS = 1;
     /** message what for get image failed **/
     private static final int                     WHAT_GET_IMAGE_FAILED  = 2;
+    /** message what for deliver messages queued **/
+    private static final int                     WHAT_DELIVER_MESSAGES  = 3;
+    /** min interval of delivering messages queued, about a frame, in mills **/
+    private static final long                    DELIVER_INTERVAL       = 16;
 
     /** thread pool whose wait for data got, attention, not the get data thread pool **/
-    private transient ExecutorService            threadPool             = Executors
-                                                                                .newFixedThreadPool(SystemUtils.DEFAULT_THREAD_POOL_SIZE);
+    private transient Executor                   threadPool;
+    /** whether {@link #threadPool} is created by this cache, only thread pool of this cache will be shutdown **/
+    private transient boolean                    isOwnThreadPool;
     /**
      * key is image url, value is the newest view which waiting for image loaded, used when {@link #isOpenWaitingQueue}
      * is false
@@ -126,6 +197,26 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
      **/
     private transient Map<String, HashSet<View>> viewSetMap;
     private transient Handler                    handler;
+    /** messages of image got, delivered to main thread in batch, see {@link #deliverMessage(Message)} **/
+    private transient Queue<Message>             messageQueue;
+    /** whether delivering messages queued has been scheduled **/
+    private transient AtomicBoolean              isDeliverScheduled;
+    /** time of last delivering messages queued, in mills **/
+    private transient volatile long              lastDeliverTime;
+    /** sweeper which is deleting unused files, null if not {@link #deleteUnusedFiles()} **/
+    private transient UnusedFileSweeper          sweeper;
+    /** blob store for small images, null if not set **/
+    private transient ImageBlobStore             blobStore;
+    /** whether compacting blob store has been scheduled **/
+    private transient AtomicBoolean              isBlobCompactScheduled;
+    /** dao to load image lazily when miss, only not null while warming up, guarded by this **/
+    private transient ImageSDCardCacheDao        lazyDao;
+    /** tag to load image lazily when miss, guarded by this **/
+    private transient String                     lazyTag;
+    /** urls not in db or whose image not exist, not loaded again while warming up, guarded by this **/
+    private transient Set<String>                lazyMissSet;
+    /** journal which every change is appended to, null if not {@link #initDataFromJournal(String)} **/
+    private transient ImageSDCardCacheJournal    journal;
 
     /**
      * get image asynchronous. when get image success, it will pass to
@@ -167,7 +258,7 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
         CacheObject<String> object = getFromCache(imageUrl, urlList);
         if (object != null) {
             String imagePath = object.getData();
-            if (!StringUtils.isEmpty(imagePath) && FileUtils.isFileExist(imagePath)) {
+            if (isImageExist(imagePath)) {
                 onGetSuccess(imageUrl, imagePath, view, true);
                 return true;
             } else {
@@ -278,6 +369,140 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
         this.httpReadTimeOut = readTimeOutMillis;
     }
 
+    /**
+     * get retry times when download image fail, default is {@link #DEFAULT_RETRY_COUNT}
+     * 
+     * @return the downloadRetryCount
+     */
+    public int getDownloadRetryCount() {
+        return downloadRetryCount;
+    }
+
+    /**
+     * set retry times when download image fail, default is {@link #DEFAULT_RETRY_COUNT}. every retry opens a new
+     * connection
+     * 
+     * @param downloadRetryCount
+     */
+    public void setDownloadRetryCount(int downloadRetryCount) {
+        if (downloadRetryCount < 0) {
+            throw new IllegalArgumentException("The downloadRetryCount can not be less than 0.");
+        }
+        this.downloadRetryCount = downloadRetryCount;
+    }
+
+    /**
+     * get whether check length of file downloaded equals to Content-Length of response, default is true
+     * 
+     * @return the isCheckContentLength
+     */
+    public boolean isCheckContentLength() {
+        return isCheckContentLength;
+    }
+
+    /**
+     * set whether check length of file downloaded equals to Content-Length of response, default is true. If true and
+     * not equal, the file will be deleted and download again. Response without Content-Length is not checked
+     * 
+     * @param isCheckContentLength
+     */
+    public void setCheckContentLength(boolean isCheckContentLength) {
+        this.isCheckContentLength = isCheckContentLength;
+    }
+
+    /**
+     * get whether revalidate expired image by ETag and Last-Modified rather than download again, default is true
+     * 
+     * @return the isRevalidate
+     */
+    public boolean isRevalidate() {
+        return isRevalidate;
+    }
+
+    /**
+     * set whether revalidate expired image by ETag and Last-Modified rather than download again, default is true
+     * <ul>
+     * <li>ETag and Last-Modified of response are saved to validator file next to image file, whose path is image path
+     * append {@link #VALIDATOR_FILE_SUFFIX}</li>
+     * <li>When image expired and image file still exists, request with If-None-Match and If-Modified-Since, if response
+     * is 304 Not Modified, image file is used again without transferring body, and life time of image is extended</li>
+     * <li>Images in blob store are not revalidated, see {@link #setBlobStore(ImageBlobStore)}</li>
+     * </ul>
+     * 
+     * @param isRevalidate
+     */
+    public void setRevalidate(boolean isRevalidate) {
+        this.isRevalidate = isRevalidate;
+    }
+
+    /**
+     * get blob store for small images, default is null
+     * 
+     * @return the blobStore
+     */
+    public ImageBlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * set blob store for small images, default is null
+     * <ul>
+     * <li>Images not larger than {@link ImageBlobStore#getMaxDataSize()} will be put into blob store rather than saved
+     * to separate files, image path of them will be blob path, see {@link ImageBlobStore#getBlobPath(String)}</li>
+     * <li>Store should be opened by {@link ImageBlobStore#open()} before set</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Blob path can not be read as a file, use {@link #openImage(String)} to read image of image path in
+     * {@link OnImageSDCallbackListener#onGetSuccess(String, String, View, boolean)}</li>
+     * <li>Folder of store should not be the same as {@link #getCacheFolder()}, but can be a sub folder of it</li>
+     * <li>Store should be set before init data, such as {@link #initData(Context, String)},
+     * {@link #initDataLazily(Context, String)} and {@link #initDataFromJournal(String)}, otherwise images in store are
+     * regarded as not exist and dropped when loaded</li>
+     * </ul>
+     * 
+     * @param blobStore
+     */
+    public void setBlobStore(ImageBlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * open image of image path, image path can be a file path or a blob path
+     * 
+     * @param imagePath
+     * @return input stream of image, you need to close it yourself
+     * @throws FileNotFoundException if image not exist
+     */
+    public InputStream openImage(String imagePath) throws FileNotFoundException {
+        if (ImageBlobStore.isBlobPath(imagePath)) {
+            ImageBlobStore store = blobStore;
+            byte[] data = (store == null ? null : store.get(ImageBlobStore.getKey(imagePath)));
+            if (data == null) {
+                throw new FileNotFoundException("image not exist in blob store, imagePath is " + imagePath);
+            }
+            return new ByteArrayInputStream(data);
+        }
+        return new FileInputStream(imagePath);
+    }
+
+    /**
+     * whether image of image path exists, image path can be a file path or a blob path
+     * 
+     * @param imagePath
+     * @return
+     */
+    public boolean isImageExist(String imagePath) {
+        if (StringUtils.isEmpty(imagePath)) {
+            return false;
+        }
+        if (ImageBlobStore.isBlobPath(imagePath)) {
+            ImageBlobStore store = blobStore;
+            return store != null && store.containsKey(ImageBlobStore.getKey(imagePath));
+        }
+        return FileUtils.isFileExist(imagePath);
+    }
+
     /**
      * get whether open waiting queue, default is true. If true, save all view waiting for image loaded, else only save
      * the newest one
@@ -386,11 +611,50 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
     public ImageSDCardCache(int maxSize, int threadPoolSize) {
         super(maxSize, threadPoolSize);
 
+        initCache();
+    }
+
+    /**
+     * <ul>
+     * <li>Get data listener is {@link #getDefaultOnGetImageListener()}</li>
+     * <li>callback interface when getting image is null, can set by
+     * {@link #setOnImageSDCallbackListener(OnImageSDCallbackListener)}</li>
+     * <li>Elements of the cache will not invalid</li>
+     * <li>Remove type is {@link RemoveTypeUsedCountSmall} when cache is full</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Thread pools can be shared with other caches, they will not be shutdown by {@link #shutdownNow()}</li>
+     * <li>Waiting thread pool will be blocked until image got by getting data thread pool, so do not use the same
+     * bounded thread pool for them, or it may deadlock when all threads are waiting</li>
+     * </ul>
+     * 
+     * @param maxSize maximum size of the cache
+     * @param getDataThreadPool getting data thread pool
+     * @param waitingThreadPool thread pool whose wait for data got, null means create a thread pool of
+     *        {@link SystemUtils#DEFAULT_THREAD_POOL_SIZE} when needed
+     * @see PreloadDataCache#PreloadDataCache(int, Executor)
+     */
+    public ImageSDCardCache(int maxSize, Executor getDataThreadPool, Executor waitingThreadPool) {
+        super(maxSize, getDataThreadPool);
+
+        initCache();
+        this.threadPool = waitingThreadPool;
+        this.isOwnThreadPool = false;
+    }
+
+    /**
+     * init listeners and containers of cache
+     */
+    private void initCache() {
         super.setOnGetDataListener(getDefaultOnGetImageListener());
         super.setCacheFullRemoveType(new RemoveTypeUsedCountSmall<String>());
         this.viewMap = new ConcurrentHashMap<String, View>();
         this.viewSetMap = new HashMap<String, HashSet<View>>();
         this.handler = new MyHandler();
+        this.messageQueue = new ConcurrentLinkedQueue<Message>();
+        this.isDeliverScheduled = new AtomicBoolean(false);
+        this.isBlobCompactScheduled = new AtomicBoolean(false);
         if (Looper.myLooper() == null) {
             Looper.prepare();
         }
@@ -444,21 +708,69 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
     }
 
     /**
+     * get thread pool whose wait for data got, create it if not exist
+     * 
+     * @return
+     */
+    private synchronized Executor getWaitingThreadPool() {
+        if (threadPool == null) {
+            threadPool = Executors.newFixedThreadPool(SystemUtils.DEFAULT_THREAD_POOL_SIZE);
+            isOwnThreadPool = true;
+        }
+        return threadPool;
+    }
+
+    /**
+     * shutdown thread pools if they are created by this cache
+     * 
      * @see ExecutorService#shutdown()
      */
     protected void shutdown() {
-        threadPool.shutdown();
+        synchronized (this) {
+            if (isOwnThreadPool && threadPool != null) {
+                ((ExecutorService)threadPool).shutdown();
+            }
+            if (sweeper != null) {
+                sweeper.stop();
+            }
+        }
         super.shutdown();
     }
 
     /**
+     * shutdown thread pools if they are created by this cache
+     * 
      * @see ExecutorService#shutdownNow()
      */
     public List<Runnable> shutdownNow() {
-        threadPool.shutdownNow();
+        synchronized (this) {
+            if (isOwnThreadPool && threadPool != null) {
+                ((ExecutorService)threadPool).shutdownNow();
+            }
+            if (sweeper != null) {
+                sweeper.stop();
+            }
+        }
         return super.shutdownNow();
     }
 
+    /**
+     * deliver message of image got to main thread
+     * <ul>
+     * <li>messages are queued and delivered in batch at most once per {@link #DELIVER_INTERVAL}, about a frame, so a
+     * burst of images got will be called back in a single main thread pass rather than one by one</li>
+     * </ul>
+     * 
+     * @param message
+     */
+    private void deliverMessage(Message message) {
+        messageQueue.add(message);
+        if (isDeliverScheduled.compareAndSet(false, true)) {
+            long delay = lastDeliverTime + DELIVER_INTERVAL - System.currentTimeMillis();
+            handler.sendEmptyMessageDelayed(WHAT_DELIVER_MESSAGES, delay > 0 ? delay : 0);
+        }
+    }
+
     /**
      * My handler
      * 
@@ -468,6 +780,14 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
 
         public void handleMessage(Message message) {
             switch (message.what) {
+                case WHAT_DELIVER_MESSAGES:
+                    isDeliverScheduled.set(false);
+                    lastDeliverTime = System.currentTimeMillis();
+                    Message queuedMessage;
+                    while ((queuedMessage = messageQueue.poll()) != null) {
+                        handleMessage(queuedMessage);
+                    }
+                    break;
                 case WHAT_GET_IMAGE_SUCCESS:
                 case WHAT_GET_IMAGE_FAILED:
                     MessageObject object = (MessageObject)message.obj;
@@ -565,33 +885,75 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
      */
     private void startGetImageThread(final String imageUrl, final List<String> urlList) {
         // wait for image be got success and send message
-        threadPool.execute(new Runnable() {
+        getWaitingThreadPool().execute(new Runnable() {
 
             @Override
             public void run() {
                 try {
                     CacheObject<String> object = get(imageUrl, urlList);
                     String imagePath = (object == null ? null : object.getData());
-                    if (StringUtils.isEmpty(imagePath) || !FileUtils.isFileExist(imagePath)) {
+                    if (!isImageExist(imagePath)) {
                         // if image get fail, remove it
                         remove(imageUrl);
                         String failedException = "get image from network or save image to sdcard error. please make sure you have added permission android.permission.WRITE_EXTERNAL_STORAGE and android.permission.ACCESS_NETWORK_STATE";
                         FailedReason failedReason = new FailedReason(FailedType.ERROR_IO, failedException);
-                        handler.sendMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, new MessageObject(imageUrl,
+                        deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, new MessageObject(imageUrl,
                                 imagePath, failedReason)));
                     } else {
-                        handler.sendMessage(handler.obtainMessage(WHAT_GET_IMAGE_SUCCESS, new MessageObject(imageUrl,
+                        deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_SUCCESS, new MessageObject(imageUrl,
                                 imagePath)));
                     }
                 } catch (OutOfMemoryError e) {
                     MessageObject msg = new MessageObject(imageUrl, null, new FailedReason(
                             FailedType.ERROR_OUT_OF_MEMORY, e));
-                    handler.sendMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, msg));
+                    deliverMessage(handler.obtainMessage(WHAT_GET_IMAGE_FAILED, msg));
                 }
             }
         });
     }
 
+    /**
+     * size of image file, used to count preload byte budget
+     */
+    @Override
+    protected long getDataSize(CacheObject<String> object) {
+        return object == null ? -1 : object.getSize();
+    }
+
+    /**
+     * record size of image file if it's unknown, so that file size is got from file system only once, and append to
+     * journal when put
+     */
+    @Override
+    public synchronized CacheObject<String> put(String key, CacheObject<String> value) {
+        if (value != null && value.getSize() < 0 && !StringUtils.isEmpty(value.getData())) {
+            ImageBlobStore store = blobStore;
+            value.setSize(ImageBlobStore.isBlobPath(value.getData()) ? (store == null ? -1 : store
+                    .getDataSize(ImageBlobStore.getKey(value.getData()))) : FileUtils.getFileSize(value.getData()));
+        }
+        CacheObject<String> o = super.put(key, value);
+        ImageSDCardCacheJournal j = journal;
+        if (o != null && j != null) {
+            j.clean(key, o);
+            if (j.isCompactNeeded()) {
+                compactJournal();
+            }
+        }
+        return o;
+    }
+
+    /**
+     * append to journal when used
+     */
+    @Override
+    protected synchronized void setUsedInfo(CacheObject<String> obj) {
+        super.setUsedInfo(obj);
+        ImageSDCardCacheJournal j = journal;
+        if (obj != null && j != null) {
+            j.readByPath(obj.getData());
+        }
+    }
+
     /**
      * delete file when full remove one
      */
@@ -599,6 +961,10 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
     protected CacheObject<String> fullRemoveOne() {
         CacheObject<String> o = super.fullRemoveOne();
         if (o != null) {
+            ImageSDCardCacheJournal j = journal;
+            if (j != null) {
+                j.removeByPath(o.getData());
+            }
             deleteFile(o.getData());
         }
         return o;
@@ -611,27 +977,55 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
     public CacheObject<String> remove(String key) {
         CacheObject<String> o = super.remove(key);
         if (o != null) {
+            ImageSDCardCacheJournal j = journal;
+            if (j != null) {
+                j.remove(key);
+            }
             deleteFile(o.getData());
         }
         return o;
     }
 
     /**
-     * delete file when clear cache
+     * delete file when clear cache, blob store is cleared as a whole
      */
     @Override
     public void clear() {
         for (CacheObject<String> value : values()) {
-            if (value != null) {
+            if (value != null && !ImageBlobStore.isBlobPath(value.getData())) {
                 deleteFile(value.getData());
             }
         }
+        ImageBlobStore store = blobStore;
+        if (store != null) {
+            try {
+                store.clear();
+            } catch (Exception e) {
+                Log.e(TAG, "clear blob store fail.", e);
+            }
+        }
         super.clear();
+        ImageSDCardCacheJournal j = journal;
+        if (j != null) {
+            j.clear();
+        }
     }
 
     /**
      * delete unused file in {@link #getCacheFolder()}, you can use it after {@link #loadDataFromDb(Context, String)} at
      * first time
+     * <ul>
+     * <li>Files are deleted incrementally in thread pool, folder by folder, every slice takes at most
+     * {@link #getSweepSliceTime()} and there is {@link #getSweepInterval()} between slices, so there is no I/O burst
+     * even if cache folder is very large</li>
+     * <li>Slices are skipped while cache is paused, see {@link PreloadDataCache#pause()}</li>
+     * <li>Sub folders are supported, such as shard folders of {@link FileNameRuleHash}</li>
+     * <li>Data in blob store not used by cache is removed too, see {@link #setBlobStore(ImageBlobStore)}</li>
+     * <li>Files modified after this called are not deleted, temp files of images downloading are not deleted if
+     * they are modified in recent hour, so downloads in progress will not be broken</li>
+     * <li>Deleting can be stopped by {@link #stopDeleteUnusedFiles()} and resumed by
+     * {@link #resumeDeleteUnusedFiles()}, call this again will start over</li>
+     * </ul>
      */
     public void deleteUnusedFiles() {
         int size = getSize();
@@ -641,29 +1035,285 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
                 filePathSet.add(value.getData());
             }
         }
+        ImageSDCardCacheJournal j = journal;
+        if (j != null) {
+            filePathSet.add(j.getJournalPath());
+        }
+        ImageBlobStore store = blobStore;
+        if (store != null) {
+            filePathSet.add(store.getFolder());
+        }
+
+        synchronized (this) {
+            if (sweeper != null) {
+                sweeper.stop();
+            }
+            sweeper = new UnusedFileSweeper(new File(getCacheFolder()).getPath(), filePathSet);
+            sweeper.start();
+        }
+        if (store != null) {
+            deleteUnusedBlobs(store);
+        }
+    }
 
-        threadPool.execute(new Runnable() {
+    /**
+     * remove data in blob store not used by cache in background, such as data of images removed after cache saved
+     * last time, data of images in cache or being got is kept
+     * 
+     * @param store
+     */
+    private void deleteUnusedBlobs(final ImageBlobStore store) {
+        getWaitingThreadPool().execute(new Runnable() {
 
             @Override
             public void run() {
-
                 try {
-                    File file = new File(getCacheFolder());
-                    if (file != null && file.exists() && file.isDirectory()) {
-                        for (File f : file.listFiles()) {
-                            if (f.isFile() && !filePathSet.contains(f.getPath())) {
-                                f.delete();
+                    for (String key : store.getKeys()) {
+                        synchronized (ImageSDCardCache.this) {
+                            CacheObject<String> o = cache.get(key);
+                            if ((o == null || !ImageBlobStore.getBlobPath(key).equals(o.getData()))
+                                    && !isExistGettingDataThread(key)) {
+                                store.remove(key);
                             }
                         }
                     }
+                    compactBlobStore(store);
                 } catch (Exception e) {
-                    e.printStackTrace();
-                    Log.e(TAG, "delete unused files fail.");
+                    Log.e(TAG, "delete unused data in blob store fail.", e);
                 }
             }
         });
     }
 
+    /**
+     * compact blob store in background if needed, only one compaction is scheduled at a time
+     * 
+     * @param store
+     */
+    private void compactBlobStore(final ImageBlobStore store) {
+        if (!store.isCompactNeeded() || !isBlobCompactScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            getWaitingThreadPool().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        store.compact();
+                    } catch (Exception e) {
+                        Log.e(TAG, "compact blob store fail.", e);
+                    } finally {
+                        isBlobCompactScheduled.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            isBlobCompactScheduled.set(false);
+        }
+    }
+
+    /**
+     * stop deleting unused files, it can be resumed by {@link #resumeDeleteUnusedFiles()}
+     */
+    public synchronized void stopDeleteUnusedFiles() {
+        if (sweeper != null) {
+            sweeper.stop();
+        }
+    }
+
+    /**
+     * resume deleting unused files from where it stopped
+     * 
+     * @return false if {@link #deleteUnusedFiles()} not called or all unused files have been deleted
+     */
+    public synchronized boolean resumeDeleteUnusedFiles() {
+        if (sweeper == null || sweeper.isFinished()) {
+            return false;
+        }
+        sweeper.start();
+        return true;
+    }
+
+    /**
+     * get max time of a slice when deleting unused files, in mills, default is {@link #DEFAULT_SLICE_TIME}
+     * 
+     * @return the sweepSliceTime
+     */
+    public long getSweepSliceTime() {
+        return sweepSliceTime;
+    }
+
+    /**
+     * set max time of a slice when deleting unused files, in mills, default is {@link #DEFAULT_SLICE_TIME}
+     * 
+     * @param sweepSliceTime
+     */
+    public void setSweepSliceTime(long sweepSliceTime) {
+        if (sweepSliceTime <= 0) {
+            throw new IllegalArgumentException("The sweepSliceTime must be greater than 0.");
+        }
+        this.sweepSliceTime = sweepSliceTime;
+    }
+
+    /**
+     * get interval between slices when deleting unused files, in mills, default is {@link #DEFAULT_SLICE_INTERVAL}
+     * 
+     * @return the sweepInterval
+     */
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    /**
+     * set interval between slices when deleting unused files, in mills, default is {@link #DEFAULT_SLICE_INTERVAL}
+     * 
+     * @param sweepInterval
+     */
+    public void setSweepInterval(long sweepInterval) {
+        if (sweepInterval < 0) {
+            throw new IllegalArgumentException("The sweepInterval can not be less than 0.");
+        }
+        this.sweepInterval = sweepInterval;
+    }
+
+    /**
+     * delete files not in cache incrementally, folder by folder and slice by slice
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-16
+     */
+    private class UnusedFileSweeper implements Runnable {
+
+        /** paths of files in use **/
+        private final Set<String>        filePathSet;
+        /** files modified after it are not deleted, one second earlier than start time for file time precision **/
+        private final long               modifiedTimeLimit;
+        /** folders to be swept **/
+        private final LinkedList<String> folderList = new LinkedList<String>();
+        /** folder being swept **/
+        private String                   folder;
+        /** names of files in {@link #folder} **/
+        private String[]                 names;
+        /** index of next name in {@link #names} **/
+        private int                      index;
+        /** whether a slice is running or scheduled, guarded by this **/
+        private boolean                  isRunning;
+        private volatile boolean         isStopped;
+        private volatile boolean         isFinished;
+
+        public UnusedFileSweeper(String cacheFolder, Set<String> filePathSet) {
+            this.filePathSet = filePathSet;
+            this.modifiedTimeLimit = System.currentTimeMillis() - 1000;
+            folderList.add(cacheFolder);
+        }
+
+        public void start() {
+            synchronized (this) {
+                isStopped = false;
+                if (isFinished || isRunning) {
+                    return;
+                }
+                isRunning = true;
+            }
+            execute();
+        }
+
+        public void stop() {
+            isStopped = true;
+        }
+
+        public boolean isFinished() {
+            return isFinished;
+        }
+
+        /**
+         * submit this to {@link #getWaitingThreadPool()}
+         */
+        private void execute() {
+            try {
+                getWaitingThreadPool().execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    isRunning = false;
+                }
+            }
+        }
+
+        /**
+         * sweep a slice, and schedule next slice after {@link #getSweepInterval()} if not stopped or finished
+         */
+        @Override
+        public void run() {
+            boolean hasMore = true;
+            try {
+                hasMore = isPaused() || sweep(SystemClock.uptimeMillis() + sweepSliceTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.e(TAG, "delete unused files fail.");
+                isStopped = true;
+            }
+
+            synchronized (this) {
+                if (!hasMore) {
+                    isFinished = true;
+                }
+                if (isFinished || isStopped) {
+                    isRunning = false;
+                    return;
+                }
+            }
+            handler.postDelayed(new Runnable() {
+
+                @Override
+                public void run() {
+                    execute();
+                }
+            }, sweepInterval);
+        }
+
+        /**
+         * sweep until deadline
+         * 
+         * @param deadline uptime in mills
+         * @return whether there are files left to be swept
+         */
+        private synchronized boolean sweep(long deadline) {
+            while (!isStopped && SystemClock.uptimeMillis() < deadline) {
+                if (names == null || index >= names.length) {
+                    folder = folderList.poll();
+                    if (folder == null) {
+                        return false;
+                    }
+                    names = new File(folder).list();
+                    index = 0;
+                    continue;
+                }
+
+                String path = new StringBuilder(folder.length() + names[index].length() + 1).append(folder)
+                        .append(File.separatorChar).append(names[index++]).toString();
+                // keep validator file of image file in use
+                if (filePathSet.contains(path)
+                        || (path.endsWith(VALIDATOR_FILE_SUFFIX) && filePathSet.contains(path.substring(0,
+                                path.length() - VALIDATOR_FILE_SUFFIX.length())))) {
+                    continue;
+                }
+                File f = new File(path);
+                if (f.isDirectory()) {
+                    folderList.add(path);
+                } else {
+                    long lastModified = f.lastModified();
+                    if (lastModified < modifiedTimeLimit
+                            && (!path.endsWith(TEMP_FILE_SUFFIX)
+                                    || lastModified < System.currentTimeMillis() - TEMP_FILE_KEEP_TIME)) {
+                        f.delete();
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * load all data from db and delete unused file in {@link #getCacheFolder()}
      * <ul>
@@ -681,6 +1331,228 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
         deleteUnusedFiles();
     }
 
+    /**
+     * load all data from journal and delete unused file in {@link #getCacheFolder()}, then every change of cache will
+     * be appended to journal
+     * <ul>
+     * <li>It's an alternative of {@link #initData(Context, String)}, rather than saving whole cache to db when app
+     * exit, only the changes are appended to journal, so data will not lost when app is killed</li>
+     * <li>Files of interrupted writing will be deleted, see {@link ImageSDCardCacheJournal#load()}</li>
+     * <li>Journal will be compacted in background when there are too many redundant records</li>
+     * <li>You should use {@link #closeJournal()} when app exit</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>If journalPath is null or empty, throws exception</li>
+     * <li>Journal should not be shared with other cache</li>
+     * </ul>
+     * 
+     * @param journalPath path of journal file, such as a file in {@link #getCacheFolder()}
+     * @return whether load journal successfully, if false, cache will not append to journal
+     */
+    public boolean initDataFromJournal(String journalPath) {
+        ImageSDCardCacheJournal j = new ImageSDCardCacheJournal(journalPath);
+        Map<String, CacheObject<String>> entryMap;
+        try {
+            entryMap = j.load();
+        } catch (IOException e) {
+            Log.e(TAG, new StringBuilder().append("load journal fail, journalPath is ").append(journalPath).toString(),
+                    e);
+            return false;
+        }
+
+        closeJournal();
+        for (Entry<String, CacheObject<String>> entry : entryMap.entrySet()) {
+            CacheObject<String> value = entry.getValue();
+            long enterTime = value.getEnterTime();
+            if (put(entry.getKey(), value) != null) {
+                value.setEnterTime(enterTime);
+            }
+        }
+        // rewrite journal fail when load, entries are still valid but journal is disabled
+        boolean isJournalEnabled = !j.isDisabled();
+        if (isJournalEnabled) {
+            journal = j;
+            if (j.isCompactNeeded()) {
+                compactJournal();
+            }
+        }
+        deleteUnusedFiles();
+        return isJournalEnabled;
+    }
+
+    /**
+     * close journal, changes after closed will not be appended to journal
+     */
+    public void closeJournal() {
+        ImageSDCardCacheJournal j = journal;
+        journal = null;
+        if (j != null) {
+            j.close();
+        }
+    }
+
+    /**
+     * compact journal in background with entries of cache
+     * <ul>
+     * <li>Entries are got in lock of cache, compacted journal is written out of it, so cache is not blocked by disk
+     * I/O, records appended meanwhile are kept by journal and appended to compacted journal</li>
+     * </ul>
+     */
+    private void compactJournal() {
+        getWaitingThreadPool().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                ImageSDCardCacheJournal j;
+                Map<String, CacheObject<String>> entryMap = new LinkedHashMap<String, CacheObject<String>>();
+                // lock cache, so no record after entries got is lost
+                synchronized (ImageSDCardCache.this) {
+                    j = journal;
+                    if (j == null || !j.isCompactNeeded() || !j.startCompact()) {
+                        return;
+                    }
+
+                    // copy values, records appended meanwhile such as READ should not be applied to them
+                    for (Entry<String, CacheObject<String>> entry : entrySet()) {
+                        CacheObject<String> value = entry.getValue();
+                        if (value != null) {
+                            CacheObject<String> copy = new CacheObject<String>(value.getData());
+                            copy.setEnterTime(value.getEnterTime());
+                            copy.setLastUsedTime(value.getLastUsedTime());
+                            copy.setUsedCount(value.getUsedCount());
+                            copy.setPriority(value.getPriority());
+                            copy.setExpired(value.isExpired());
+                            copy.setForever(value.isForever());
+                            copy.setSize(value.getSize());
+                            entryMap.put(entry.getKey(), copy);
+                        }
+                    }
+                }
+                j.finishCompact(j.writeCompactFile(entryMap));
+            }
+        });
+    }
+
+    /**
+     * init data from db lazily, it's a lazy mode of {@link #initData(Context, String)}
+     * <ul>
+     * <li>Returns immediately, data in db is loaded in background to warm up cache, then
+     * {@link #deleteUnusedFiles()}</li>
+     * <li>While warming up, image not in cache is loaded from db by url index in getting data thread before
+     * downloading, so time to first image does not depend on size of cache, and main thread never queries db</li>
+     * <li>Data in cache is not overridden by data in db when warming up</li>
+     * <li>Url missed in db is remembered until warming up finished, so db is queried once for it</li>
+     * <li>You should use {@link #saveDataToDb(Context, String)} to save data when app exit</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>If context is null or tag is null or empty, throws exception</li>
+     * <li>{@link #setBlobStore(ImageBlobStore)} should be called before this, otherwise images in blob store are
+     * dropped</li>
+     * </ul>
+     * 
+     * @param context
+     * @param tag tag used to mark this cache when save to and load from db, should be unique and cannot be null or
+     *        empty
+     */
+    public void initDataLazily(Context context, final String tag) {
+        if (context == null) {
+            throw new IllegalArgumentException("The context can not be null.");
+        }
+        if (StringUtils.isEmpty(tag)) {
+            throw new IllegalArgumentException("The tag can not be null or empty.");
+        }
+
+        final ImageSDCardCacheDao dao = new ImageSDCardCacheDaoImpl(SqliteUtils.getInstance(context));
+        synchronized (this) {
+            lazyTag = tag;
+            lazyDao = dao;
+            lazyMissSet = new HashSet<String>();
+        }
+        getWaitingThreadPool().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    for (Entry<String, CacheObject<String>> entry : dao.getImageSDCardCacheMap(tag).entrySet()) {
+                        synchronized (ImageSDCardCache.this) {
+                            // init lazily again
+                            if (lazyDao != dao) {
+                                return;
+                            }
+                            putIfAbsent(entry.getKey(), entry.getValue());
+                        }
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "warm up cache from db fail.", e);
+                } finally {
+                    synchronized (ImageSDCardCache.this) {
+                        if (lazyDao == dao) {
+                            lazyDao = null;
+                            lazyTag = null;
+                            lazyMissSet = null;
+                        }
+                    }
+                }
+                deleteUnusedFiles();
+            }
+        });
+    }
+
+    /**
+     * load image from db by url in getting data thread while warming up, see {@link #initDataLazily(Context, String)}
+     */
+    @Override
+    protected CacheObject<String> loadMissing(String key) {
+        ImageSDCardCacheDao dao;
+        String tag;
+        synchronized (this) {
+            if (key == null || lazyMissSet == null || lazyMissSet.contains(key)) {
+                return null;
+            }
+            dao = lazyDao;
+            tag = lazyTag;
+        }
+        if (dao == null || tag == null) {
+            return null;
+        }
+
+        try {
+            CacheObject<String> value = dao.getImageSDCardCache(tag, key);
+            CacheObject<String> o = (value == null ? null : putIfAbsent(key, value));
+            if (o == null) {
+                synchronized (this) {
+                    if (lazyDao == dao) {
+                        lazyMissSet.add(key);
+                    }
+                }
+            }
+            return o;
+        } catch (Exception e) {
+            Log.e(TAG, new StringBuilder().append("load image from db fail, imageUrl is ").append(key).toString(), e);
+            return null;
+        }
+    }
+
+    /**
+     * put value loaded from db or other into cache if key not in cache and image exists
+     * 
+     * @param key
+     * @param value
+     * @return value in cache, null if image not exist or put fail
+     */
+    private synchronized CacheObject<String> putIfAbsent(String key, CacheObject<String> value) {
+        CacheObject<String> o = cache.get(key);
+        if (o != null) {
+            return o;
+        }
+        if (key == null || value == null || !isImageExist(value.getData())) {
+            return null;
+        }
+        return put(key, value);
+    }
+
     /**
      * load all data in db whose tag is same to tag to imageSDCardCache. just put, do not affect the original data
      * <ul>
@@ -791,7 +1663,21 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
      * @return
      */
     private boolean deleteFile(String path) {
+        if (ImageBlobStore.isBlobPath(path)) {
+            ImageBlobStore store = blobStore;
+            try {
+                if (store != null && store.remove(ImageBlobStore.getKey(path))) {
+                    compactBlobStore(store);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, new StringBuilder().append("delete image from blob store fail, path is ").append(path)
+                        .toString(), e);
+                return false;
+            }
+            return true;
+        }
         if (!StringUtils.isEmpty(path)) {
+            FileUtils.deleteFile(path + VALIDATOR_FILE_SUFFIX);
             if (!FileUtils.deleteFile(path)) {
                 Log.e(TAG, new StringBuilder().append("delete file fail, path is ").append(path).toString());
                 return false;
@@ -812,44 +1698,241 @@ public class ImageSDCardCache extends PreloadDataCache<String, String> {
 
             @Override
             public CacheObject<String> onGetData(String key) {
-
-                String savePath = null;
-                InputStream stream = null;
-                try {
-                    stream = ImageUtils.getInputStreamFromUrl(key, httpReadTimeOut, requestProperties);
-                } catch (Exception e) {
-                    Log.e(TAG, new StringBuilder().append("get image exception, imageUrl is:").append(key).toString(),
-                            e);
-                }
-
-                if (stream != null) {
-                    savePath = cacheFolder + File.separator + fileNameRule.getFileName(key);
+                String savePath = cacheFolder + File.separator + fileNameRule.getFileName(key);
+                for (int i = 0;; i++) {
                     try {
-                        FileUtils.writeFile(savePath, stream);
-                    } catch (Exception e1) {
-                        try {
-                            if (e1.getCause() instanceof FileNotFoundException) {
-                                FileUtils.makeFolders(savePath);
-                                FileUtils.writeFile(savePath, stream);
-                            } else {
-                                Log.e(TAG,
-                                        new StringBuilder()
-                                                .append("get image exception while write to file, imageUrl is: ")
-                                                .append(key).append(", savePath is ").append(savePath).toString(), e1);
-                            }
-                        } catch (Exception e2) {
-                            Log.e(TAG,
-                                    new StringBuilder()
-                                            .append("get image exception while write to file, imageUrl is: ")
-                                            .append(key).append(", savePath is ").append(savePath).toString(), e2);
+                        return downloadImage(key, savePath);
+                    } catch (IOException e) {
+                        if (i >= downloadRetryCount) {
+                            Log.e(TAG, new StringBuilder().append("get image exception, imageUrl is: ").append(key)
+                                    .append(", savePath is ").append(savePath).toString(), e);
+                            return null;
                         }
                     }
                 }
-                return (StringUtils.isEmpty(savePath) ? null : new CacheObject<String>(savePath));
             }
         };
     }
 
+    /**
+     * download image to savePath
+     * <ul>
+     * <li>Image is streamed to a temp file at first, and renamed to savePath after all bytes got, so a half-written
+     * file will never be seen at savePath</li>
+     * <li>If {@link #isCheckContentLength()} and length of temp file not equals to Content-Length of response, temp
+     * file will be deleted and return null</li>
+     * <li>If {@link #getBlobStore()} is not null and Content-Length is not larger than
+     * {@link ImageBlobStore#getMaxDataSize()}, image is put into blob store rather than saved to savePath</li>
+     * <li>Only IO exceptions, incomplete body and server errors(5xx) are thrown as {@link IOException} which can be
+     * retried, client errors(4xx) and other failures return null</li>
+     * </ul>
+     * 
+     * @param imageUrl
+     * @param savePath
+     * @return cache object whose data is image path and size is size of image, null if download fail
+     * @throws IOException if download fail and can be retried
+     */
+    private CacheObject<String> downloadImage(String imageUrl, String savePath) throws IOException {
+        String tempPath = savePath + TEMP_FILE_SUFFIX;
+        HttpURLConnection con = null;
+        InputStream stream = null;
+        OutputStream out = null;
+        boolean isComplete = false;
+        try {
+            con = ImageUtils.getHttpURLConnection(imageUrl, httpReadTimeOut, requestProperties);
+            boolean isConditional = isRevalidate && setValidators(con, savePath);
+            if (isConditional && con.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                saveValidators(con, savePath, true);
+                isComplete = true;
+                CacheObject<String> o = new CacheObject<String>(savePath);
+                o.setSize(FileUtils.getFileSize(savePath));
+                return o;
+            }
+
+            int responseCode = con.getResponseCode();
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // connection can be reused only if error stream is drained
+                isComplete = HttpUtils.drainErrorStream(con);
+                if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                    throw new IOException("server error " + responseCode);
+                }
+                Log.e(TAG, new StringBuilder().append("get image fail, imageUrl is: ").append(imageUrl)
+                        .append(", response code is ").append(responseCode).toString());
+                return null;
+            }
+
+            stream = con.getInputStream();
+            ImageBlobStore store = blobStore;
+            if (store != null && con.getContentLength() > 0 && con.getContentLength() <= store.getMaxDataSize()) {
+                CacheObject<String> o = downloadImageToBlobStore(imageUrl, stream, con.getContentLength(), store);
+                isComplete = true;
+                return o;
+            }
+
+            ImageSDCardCacheJournal j = journal;
+            if (j != null) {
+                j.dirty(imageUrl, tempPath);
+            }
+            FileUtils.makeFolders(savePath);
+            out = new FileOutputStream(tempPath);
+            byte[] buffer = DOWNLOAD_BUFFER.get();
+            long length = 0;
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                length += count;
+            }
+            isComplete = true;
+            out.close();
+            out = null;
+
+            int contentLength = con.getContentLength();
+            if (length == 0 || (isCheckContentLength && contentLength >= 0 && length != contentLength)) {
+                throw new IOException(new StringBuilder().append("download image incomplete, length is ")
+                        .append(length).append(", Content-Length is ").append(contentLength).toString());
+            }
+            if (!new File(tempPath).renameTo(new File(savePath))) {
+                Log.e(TAG, new StringBuilder().append("rename temp file fail, savePath is ").append(savePath)
+                        .toString());
+                FileUtils.deleteFile(tempPath);
+                return null;
+            }
+            if (isRevalidate) {
+                saveValidators(con, savePath, false);
+            }
+            CacheObject<String> o = new CacheObject<String>(savePath);
+            o.setSize(length);
+            return o;
+        } catch (IOException e) {
+            IOUtils.close(out);
+            FileUtils.deleteFile(tempPath);
+            throw e;
+        } catch (RuntimeException e) {
+            Log.e(TAG, new StringBuilder().append("get image exception, imageUrl is: ").append(imageUrl)
+                    .append(", savePath is ").append(savePath).toString(), e);
+            IOUtils.close(out);
+            FileUtils.deleteFile(tempPath);
+            return null;
+        } finally {
+            IOUtils.close(stream);
+            HttpUtils.releaseConnection(con, isComplete);
+        }
+    }
+
+    /**
+     * set If-None-Match and If-Modified-Since of connection by validator file of image file
+     * 
+     * @param con
+     * @param savePath path of image file
+     * @return whether validators are set, false if image file or validator file not exist
+     */
+    private static boolean setValidators(HttpURLConnection con, String savePath) {
+        String validatorPath = savePath + VALIDATOR_FILE_SUFFIX;
+        if (!FileUtils.isFileExist(savePath) || !FileUtils.isFileExist(validatorPath)) {
+            return false;
+        }
+
+        String[] validators = readValidators(validatorPath);
+        if (!StringUtils.isEmpty(validators[0])) {
+            con.setRequestProperty(HttpConstants.IF_NONE_MATCH, validators[0]);
+        }
+        if (!StringUtils.isEmpty(validators[1])) {
+            con.setRequestProperty(HttpConstants.IF_MODIFIED_SINCE, validators[1]);
+        }
+        return !StringUtils.isEmpty(validators[0]) || !StringUtils.isEmpty(validators[1]);
+    }
+
+    /**
+     * read ETag and Last-Modified from validator file
+     * 
+     * @param validatorPath
+     * @return array of ETag and Last-Modified, element is null if not exist
+     */
+    private static String[] readValidators(String validatorPath) {
+        String[] validators = new String[2];
+        List<String> lineList = FileUtils.readFileToList(validatorPath, "UTF-8");
+        if (lineList != null) {
+            for (String line : lineList) {
+                if (line.startsWith(HttpConstants.ETAG + ": ")) {
+                    validators[0] = line.substring(HttpConstants.ETAG.length() + 2);
+                } else if (line.startsWith(HttpConstants.LAST_MODIFIED + ": ")) {
+                    validators[1] = line.substring(HttpConstants.LAST_MODIFIED.length() + 2);
+                }
+            }
+        }
+        return validators;
+    }
+
+    /**
+     * save ETag and Last-Modified of response to validator file of image file
+     * <ul>
+     * <li>If response is not modified, validators not in response are kept, because 304 response may omit them</li>
+     * <li>Otherwise delete validator file if neither exists</li>
+     * </ul>
+     * 
+     * @param con
+     * @param savePath path of image file
+     * @param isNotModified whether response is 304 Not Modified
+     */
+    private static void saveValidators(HttpURLConnection con, String savePath, boolean isNotModified) {
+        String validatorPath = savePath + VALIDATOR_FILE_SUFFIX;
+        String eTag = con.getHeaderField(HttpConstants.ETAG);
+        String lastModified = con.getHeaderField(HttpConstants.LAST_MODIFIED);
+        try {
+            if (isNotModified) {
+                if (StringUtils.isEmpty(eTag) && StringUtils.isEmpty(lastModified)) {
+                    return;
+                }
+                String[] validators = readValidators(validatorPath);
+                eTag = StringUtils.isEmpty(eTag) ? validators[0] : eTag;
+                lastModified = StringUtils.isEmpty(lastModified) ? validators[1] : lastModified;
+            }
+            if (StringUtils.isEmpty(eTag) && StringUtils.isEmpty(lastModified)) {
+                FileUtils.deleteFile(validatorPath);
+                return;
+            }
+
+            StringBuilder content = new StringBuilder();
+            if (!StringUtils.isEmpty(eTag)) {
+                content.append(HttpConstants.ETAG).append(": ").append(eTag).append("\n");
+            }
+            if (!StringUtils.isEmpty(lastModified)) {
+                content.append(HttpConstants.LAST_MODIFIED).append(": ").append(lastModified).append("\n");
+            }
+            FileUtils.writeFile(validatorPath, content.toString());
+        } catch (Exception e) {
+            Log.e(TAG, new StringBuilder().append("save validators fail, savePath is ").append(savePath).toString(), e);
+        }
+    }
+
+    /**
+     * read image into bytes and put into blob store
+     * 
+     * @param imageUrl
+     * @param stream
+     * @param contentLength
+     * @param store
+     * @return cache object whose data is blob path
+     * @throws IOException if bytes read not equals to contentLength
+     */
+    private CacheObject<String> downloadImageToBlobStore(String imageUrl, InputStream stream, int contentLength,
+            ImageBlobStore store) throws IOException {
+        byte[] data = new byte[contentLength];
+        int length = 0, count = 0;
+        while (length < contentLength && (count = stream.read(data, length, contentLength - length)) != -1) {
+            length += count;
+        }
+        if (length != contentLength || stream.read() != -1) {
+            throw new IOException(new StringBuilder().append("download image incomplete, length is ").append(length)
+                    .append(", Content-Length is ").append(contentLength).toString());
+        }
+
+        store.put(imageUrl, data);
+        CacheObject<String> o = new CacheObject<String>(ImageBlobStore.getBlobPath(imageUrl));
+        o.setSize(contentLength);
+        return o;
+    }
+
     /**
      * get recommend default max cache size according to dalvik max memory
      * 
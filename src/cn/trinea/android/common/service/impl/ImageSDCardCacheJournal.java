@@ -0,0 +1,612 @@
+package cn.trinea.android.common.service.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import android.util.Log;
+import cn.trinea.android.common.entity.CacheObject;
+import cn.trinea.android.common.util.FileUtils;
+import cn.trinea.android.common.util.IOUtils;
+
+/**
+ * Journal of {@link ImageSDCardCache}, an append-only file which records every change of the cache, used to restore
+ * cache when app start
+ * <ul>
+ * <strong>Records</strong>, one record per line, fields are separated by space and url encoded
+ * <li>DIRTY key path, image of the key is being written to path</li>
+ * <li>CLEAN key path enterTime lastUsedTime usedCount priority isExpired isForever size, image of the key is put
+ * into cache, size is optional</li>
+ * <li>REMOVE key, image of the key is removed from cache</li>
+ * <li>READ key time, image of the key is used at time</li>
+ * </ul>
+ * <ul>
+ * <strong>Rules</strong>
+ * <li>A DIRTY record without CLEAN or REMOVE record after it means writing image was interrupted, the file will be
+ * deleted when {@link #load()}</li>
+ * <li>A record which can not be parsed, such as the last one written while app crashed, will be ignored</li>
+ * <li>If there are too many redundant records, journal should be compacted by {@link #compact(Map)}, see
+ * {@link #isCompactNeeded()}. To compact without blocking records, use {@link #startCompact()},
+ * {@link #writeCompactFile(Map)} and {@link #finishCompact(boolean)}</li>
+ * <li>If writing journal failed, such as sdcard is full or removed, journal will be disabled and its file will be
+ * deleted, records will be ignored until next {@link #load()}, so cache operations will never fail because of
+ * journal, see {@link #isDisabled()}</li>
+ * </ul>
+ * 
+ * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-10
+ */
+public class ImageSDCardCacheJournal {
+
+    /** magic of journal file, the first line **/
+    public static final String        MAGIC                   = "cn.trinea.android.common.ImageSDCardCacheJournal";
+    /** version of journal file, the second line **/
+    public static final String        VERSION                 = "1";
+
+    /** min count of redundant records to compact **/
+    public static final int           COMPACT_REDUNDANT_COUNT = 2000;
+
+    private static final String       CLEAN                   = "CLEAN";
+    private static final String       DIRTY                   = "DIRTY";
+    private static final String       REMOVE                  = "REMOVE";
+    private static final String       READ                    = "READ";
+    private static final String       SEPARATOR               = " ";
+    private static final String       ENCODING                = "UTF-8";
+    private static final String       TAG                     = "ImageSDCardCacheJournal";
+
+    private String                    journalPath;
+    private Writer                    writer;
+    /** key is image path, value is key, entries in journal **/
+    private Map<String, String>       pathKeyMap              = new HashMap<String, String>();
+    /** key is key, value is image path, entries in journal **/
+    private Map<String, String>       keyPathMap              = new HashMap<String, String>();
+    /** count of records which are not needed when compact **/
+    private int                       redundantCount;
+    /** whether journal is disabled because of writing failed **/
+    private boolean                   isDisabled;
+    /** records written after {@link #startCompact()}, null if not compacting **/
+    private List<String>              compactRecordList;
+
+    /**
+     * @param journalPath path of journal file
+     */
+    public ImageSDCardCacheJournal(String journalPath) {
+        if (journalPath == null || journalPath.length() == 0) {
+            throw new IllegalArgumentException("The journalPath can not be null or empty.");
+        }
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * get path of journal file
+     * 
+     * @return
+     */
+    public String getJournalPath() {
+        return journalPath;
+    }
+
+    /**
+     * whether journal is disabled because of writing failed, records will be ignored until next {@link #load()}
+     * 
+     * @return
+     */
+    public synchronized boolean isDisabled() {
+        return isDisabled;
+    }
+
+    /**
+     * read journal file and get entries of cache, then open journal to append records
+     * <ul>
+     * <li>files of interrupted writing will be deleted</li>
+     * <li>if journal file not exist or magic and version not matched, a new journal file will be created</li>
+     * <li>if the last line is not terminated, such as app crashed while writing it, journal file will be rewritten,
+     * so that records appended will not be joined to it</li>
+     * </ul>
+     * 
+     * @return entries of cache in the order of their CLEAN records, key is key, value is cache object
+     * @throws IOException if create or open journal file failed
+     */
+    public synchronized Map<String, CacheObject<String>> load() throws IOException {
+        close();
+        compactRecordList = null;
+        pathKeyMap.clear();
+        keyPathMap.clear();
+        redundantCount = 0;
+        isDisabled = false;
+
+        Map<String, CacheObject<String>> entryMap = new LinkedHashMap<String, CacheObject<String>>();
+        Map<String, String> dirtyMap = new HashMap<String, String>();
+        File file = new File(journalPath);
+        boolean isValid = false;
+        if (file.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+                if (MAGIC.equals(reader.readLine()) && VERSION.equals(reader.readLine())) {
+                    isValid = true;
+                    int lineCount = 0;
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lineCount++;
+                        readRecord(line, entryMap, dirtyMap);
+                    }
+                    redundantCount = lineCount - entryMap.size();
+                }
+            } finally {
+                IOUtils.close(reader);
+            }
+        }
+
+        // delete files of interrupted writing
+        for (Entry<String, String> entry : dirtyMap.entrySet()) {
+            CacheObject<String> value = entryMap.get(entry.getKey());
+            if (value == null || !entry.getValue().equals(value.getData())) {
+                FileUtils.deleteFile(entry.getValue());
+            }
+        }
+        for (Entry<String, CacheObject<String>> entry : entryMap.entrySet()) {
+            putEntry(entry.getKey(), entry.getValue().getData());
+        }
+
+        if (isValid && dirtyMap.isEmpty() && isLastLineTerminated(file)) {
+            openWriter(true);
+        } else {
+            // journal will be disabled if rewrite failed
+            rewrite(entryMap);
+        }
+        return entryMap;
+    }
+
+    /**
+     * record that image of the key is being written to path
+     * 
+     * @param key
+     * @param path
+     */
+    public synchronized void dirty(String key, String path) {
+        writeRecord(true, toRecord(DIRTY, encode(key), encode(path)));
+        redundantCount++;
+    }
+
+    /**
+     * record that image of the key is put into cache
+     * 
+     * @param key
+     * @param value
+     */
+    public synchronized void clean(String key, CacheObject<String> value) {
+        if (value == null) {
+            return;
+        }
+
+        writeRecord(true, toCleanRecord(key, value));
+        if (putEntry(key, value.getData())) {
+            redundantCount++;
+        }
+    }
+
+    /**
+     * record that image of the path is used now, not flushed immediately
+     * 
+     * @param path
+     */
+    public synchronized void readByPath(String path) {
+        String key = (path == null ? null : pathKeyMap.get(path));
+        if (key != null) {
+            writeRecord(false, toRecord(READ, encode(key), Long.toString(System.currentTimeMillis())));
+            redundantCount++;
+        }
+    }
+
+    /**
+     * record that image of the key is removed from cache
+     * 
+     * @param key
+     */
+    public synchronized void remove(String key) {
+        if (key == null) {
+            return;
+        }
+
+        writeRecord(true, toRecord(REMOVE, encode(key)));
+        redundantCount++;
+        String path = keyPathMap.remove(key);
+        if (path != null) {
+            pathKeyMap.remove(path);
+            redundantCount++;
+        }
+    }
+
+    /**
+     * record that image of the path is removed from cache
+     * 
+     * @param path
+     */
+    public synchronized void removeByPath(String path) {
+        String key = (path == null ? null : pathKeyMap.get(path));
+        if (key != null) {
+            remove(key);
+        }
+    }
+
+    /**
+     * record that all images are removed from cache
+     */
+    public synchronized void clear() {
+        compactRecordList = null;
+        rewrite(new HashMap<String, CacheObject<String>>());
+        pathKeyMap.clear();
+        keyPathMap.clear();
+    }
+
+    /**
+     * whether there are too many redundant records, so that journal should be compacted
+     * 
+     * @return
+     */
+    public synchronized boolean isCompactNeeded() {
+        return redundantCount >= COMPACT_REDUNDANT_COUNT && redundantCount >= keyPathMap.size();
+    }
+
+    /**
+     * compact journal, rewrite it with a CLEAN record per entry of cache
+     * 
+     * @param entryMap entries of cache, such as {@link ImageSDCardCache}
+     */
+    public synchronized void compact(Map<String, CacheObject<String>> entryMap) {
+        compactRecordList = null;
+        rewrite(entryMap);
+        pathKeyMap.clear();
+        keyPathMap.clear();
+        for (Entry<String, CacheObject<String>> entry : entryMap.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                putEntry(entry.getKey(), entry.getValue().getData());
+            }
+        }
+    }
+
+    /**
+     * start compacting journal, records written after this are still appended to journal file, and kept to be
+     * appended to the compacted file by {@link #finishCompact(boolean)}
+     * <ul>
+     * <li>You should get entries of cache at the same time with this, such as in the same lock, then
+     * {@link #writeCompactFile(Map)} and {@link #finishCompact(boolean)}</li>
+     * </ul>
+     * 
+     * @return false if journal is disabled, not open or compacting
+     */
+    public synchronized boolean startCompact() {
+        if (isDisabled || writer == null || compactRecordList != null) {
+            return false;
+        }
+        compactRecordList = new ArrayList<String>();
+        return true;
+    }
+
+    /**
+     * write compacted journal to a temp file, a CLEAN record per entry of cache, it does not block records
+     * 
+     * @param entryMap entries of cache when {@link #startCompact()}
+     * @return whether write successfully
+     */
+    public boolean writeCompactFile(Map<String, CacheObject<String>> entryMap) {
+        Writer compactWriter = null;
+        try {
+            compactWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getCompactPath()),
+                    ENCODING));
+            writeHeader(compactWriter);
+            for (Entry<String, CacheObject<String>> entry : entryMap.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    compactWriter.write(toCleanRecord(entry.getKey(), entry.getValue()));
+                }
+            }
+            compactWriter.close();
+            compactWriter = null;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, new StringBuilder().append("write compacted journal fail, journalPath is ").append(journalPath)
+                    .toString(), e);
+            IOUtils.closeQuietly(compactWriter);
+            FileUtils.deleteFile(getCompactPath());
+            return false;
+        }
+    }
+
+    /**
+     * finish compacting, append records written after {@link #startCompact()} to the compacted file, and replace
+     * journal file with it
+     * <ul>
+     * <li>Compacting is cancelled if journal is loaded, cleared or compacted by {@link #compact(Map)} after
+     * {@link #startCompact()}, or disabled</li>
+     * </ul>
+     * 
+     * @param isWritten result of {@link #writeCompactFile(Map)}
+     */
+    public synchronized void finishCompact(boolean isWritten) {
+        List<String> recordList = compactRecordList;
+        compactRecordList = null;
+        File compactFile = new File(getCompactPath());
+        if (!isWritten || recordList == null || isDisabled || writer == null) {
+            compactFile.delete();
+            return;
+        }
+
+        Writer compactWriter = null;
+        try {
+            compactWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(compactFile, true),
+                    ENCODING));
+            for (String record : recordList) {
+                compactWriter.write(record);
+            }
+            compactWriter.close();
+            compactWriter = null;
+        } catch (IOException e) {
+            // old journal file is still complete
+            Log.e(TAG, new StringBuilder().append("write compacted journal fail, journalPath is ").append(journalPath)
+                    .toString(), e);
+            IOUtils.closeQuietly(compactWriter);
+            compactFile.delete();
+            return;
+        }
+
+        close();
+        File file = new File(journalPath);
+        if ((file.exists() && !file.delete()) || !compactFile.renameTo(file)) {
+            compactFile.delete();
+            disable(new IOException("replace journal file fail."));
+            return;
+        }
+        redundantCount = recordList.size();
+        try {
+            openWriter(true);
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    /**
+     * flush and close journal file
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            IOUtils.close(writer);
+            writer = null;
+        }
+    }
+
+    /**
+     * read a record to entries
+     * 
+     * @param line
+     * @param entryMap
+     * @param dirtyMap
+     */
+    private static void readRecord(String line, Map<String, CacheObject<String>> entryMap,
+            Map<String, String> dirtyMap) {
+        String[] fields = line.split(SEPARATOR);
+        try {
+            String key = decode(fields[1]);
+            if (CLEAN.equals(fields[0]) && (fields.length == 9 || fields.length == 10)) {
+                CacheObject<String> value = new CacheObject<String>(decode(fields[2]));
+                value.setEnterTime(Long.parseLong(fields[3]));
+                value.setLastUsedTime(Long.parseLong(fields[4]));
+                value.setUsedCount(Long.parseLong(fields[5]));
+                value.setPriority(Integer.parseInt(fields[6]));
+                value.setExpired("1".equals(fields[7]));
+                value.setForever("1".equals(fields[8]));
+                if (fields.length == 10) {
+                    value.setSize(Long.parseLong(fields[9]));
+                }
+                // remove at first, so order of entries is the order of their last CLEAN records
+                entryMap.remove(key);
+                entryMap.put(key, value);
+                dirtyMap.remove(key);
+            } else if (DIRTY.equals(fields[0]) && fields.length == 3) {
+                dirtyMap.put(key, decode(fields[2]));
+            } else if (REMOVE.equals(fields[0]) && fields.length == 2) {
+                entryMap.remove(key);
+                dirtyMap.remove(key);
+            } else if (READ.equals(fields[0]) && fields.length == 3) {
+                CacheObject<String> value = entryMap.get(key);
+                if (value != null) {
+                    value.setUsedCount(value.getUsedCount() + 1);
+                    value.setLastUsedTime(Long.parseLong(fields[2]));
+                }
+            }
+        } catch (RuntimeException e) {
+            // ignore broken record, such as the last one written while app crashed
+        }
+    }
+
+    /**
+     * @param key
+     * @param path
+     * @return whether key is already in journal
+     */
+    private boolean putEntry(String key, String path) {
+        String oldPath = keyPathMap.put(key, path);
+        if (oldPath != null) {
+            pathKeyMap.remove(oldPath);
+        }
+        if (path != null) {
+            pathKeyMap.put(path, key);
+        }
+        return oldPath != null;
+    }
+
+    /**
+     * rewrite journal file with a CLEAN record per entry, write to a temp file and rename it to journal file
+     * 
+     * @param entryMap
+     */
+    private void rewrite(Map<String, CacheObject<String>> entryMap) {
+        close();
+        if (isDisabled) {
+            return;
+        }
+
+        File tempFile = new File(journalPath + ".tmp");
+        Writer tempWriter = null;
+        try {
+            FileUtils.makeFolders(journalPath);
+            tempWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), ENCODING));
+            writeHeader(tempWriter);
+            for (Entry<String, CacheObject<String>> entry : entryMap.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    tempWriter.write(toCleanRecord(entry.getKey(), entry.getValue()));
+                }
+            }
+            tempWriter.close();
+            tempWriter = null;
+
+            File file = new File(journalPath);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("delete journal file fail.");
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("rename journal file fail.");
+            }
+            redundantCount = 0;
+            openWriter(true);
+        } catch (IOException e) {
+            writer = null;
+            IOUtils.close(tempWriter);
+            tempFile.delete();
+            disable(e);
+        }
+    }
+
+    /**
+     * disable journal when writing failed, and delete journal file because it's not complete any more
+     * 
+     * @param e
+     */
+    private void disable(IOException e) {
+        Log.e(TAG, new StringBuilder().append("write journal fail, journal is disabled, journalPath is ")
+                .append(journalPath).toString(), e);
+        IOUtils.closeQuietly(writer);
+        writer = null;
+        isDisabled = true;
+        FileUtils.deleteFile(journalPath);
+    }
+
+    /**
+     * whether the last line of file is terminated by line break
+     * 
+     * @param file
+     * @return false if file is empty or read fail
+     */
+    private static boolean isLastLineTerminated(File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            long length = randomAccessFile.length();
+            if (length == 0) {
+                return false;
+            }
+            randomAccessFile.seek(length - 1);
+            return randomAccessFile.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * @param isAppend
+     * @throws IOException
+     */
+    private void openWriter(boolean isAppend) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalPath, isAppend), ENCODING));
+    }
+
+    /**
+     * write a record, records will be ignored if journal is not open or disabled, and kept if compacting
+     * 
+     * @param isFlush whether flush journal file after writing
+     * @param record record with line break
+     */
+    private void writeRecord(boolean isFlush, String record) {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.write(record);
+            if (isFlush) {
+                writer.flush();
+            }
+            if (compactRecordList != null) {
+                compactRecordList.add(record);
+            }
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    /**
+     * @param fields
+     * @return record of fields with line break
+     */
+    private static String toRecord(String... fields) {
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                record.append(SEPARATOR);
+            }
+            record.append(fields[i]);
+        }
+        return record.append("\n").toString();
+    }
+
+    private static String toCleanRecord(String key, CacheObject<String> value) {
+        return toRecord(CLEAN, encode(key), encode(value.getData()), Long.toString(value.getEnterTime()),
+                Long.toString(value.getLastUsedTime()), Long.toString(value.getUsedCount()),
+                Integer.toString(value.getPriority()), value.isExpired() ? "1" : "0", value.isForever() ? "1" : "0",
+                Long.toString(value.getSize()));
+    }
+
+    private static void writeHeader(Writer writer) throws IOException {
+        writer.write(MAGIC);
+        writer.write("\n");
+        writer.write(VERSION);
+        writer.write("\n");
+    }
+
+    private String getCompactPath() {
+        return journalPath + ".compact";
+    }
+
+    private static String encode(String s) {
+        try {
+            return s == null ? "" : URLEncoder.encode(s, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UnsupportedEncodingException occurred. ", e);
+        }
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UnsupportedEncodingException occurred. ", e);
+        }
+    }
+}
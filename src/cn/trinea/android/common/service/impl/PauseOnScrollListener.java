@@ -0,0 +1,87 @@
+package cn.trinea.android.common.service.impl;
+
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+/**
+ * Scroll listener which pause cache when list is scrolling, and resume it when list stops
+ * <ul>
+ * <li>Usage: listView.setOnScrollListener(new PauseOnScrollListener(imageCache, false, true)), it also works for
+ * {@link cn.trinea.android.common.view.DropDownListView}</li>
+ * <li>While paused, {@link ImageMemoryCache} and {@link ImageCache} only return images in memory, so rows scrolled
+ * off screen during fling will not start getting images. see {@link ImageMemoryCache#resume()}</li>
+ * <li>Other scroll listener can be passed by {@link #PauseOnScrollListener(PreloadDataCache, boolean, boolean,
+ * OnScrollListener)}, it will be called too</li>
+ * </ul>
+ * 
+ * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-5-28
+ */
+public class PauseOnScrollListener implements OnScrollListener {
+
+    private PreloadDataCache<?, ?> cache;
+    /** whether pause when list is scrolling by touch **/
+    private boolean                isPauseOnScroll;
+    /** whether pause when list is flinging **/
+    private boolean                isPauseOnFling;
+    private OnScrollListener       customListener;
+
+    /**
+     * @param cache cache to pause and resume
+     * @param isPauseOnScroll whether pause when list is scrolling by touch
+     * @param isPauseOnFling whether pause when list is flinging
+     */
+    public PauseOnScrollListener(PreloadDataCache<?, ?> cache, boolean isPauseOnScroll, boolean isPauseOnFling) {
+        this(cache, isPauseOnScroll, isPauseOnFling, null);
+    }
+
+    /**
+     * @param cache cache to pause and resume
+     * @param isPauseOnScroll whether pause when list is scrolling by touch
+     * @param isPauseOnFling whether pause when list is flinging
+     * @param customListener other scroll listener, will be called too
+     */
+    public PauseOnScrollListener(PreloadDataCache<?, ?> cache, boolean isPauseOnScroll, boolean isPauseOnFling,
+            OnScrollListener customListener) {
+        if (cache == null) {
+            throw new IllegalArgumentException("The cache can not be null.");
+        }
+        this.cache = cache;
+        this.isPauseOnScroll = isPauseOnScroll;
+        this.isPauseOnFling = isPauseOnFling;
+        this.customListener = customListener;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        switch (scrollState) {
+            case OnScrollListener.SCROLL_STATE_IDLE:
+                cache.resume();
+                break;
+            case OnScrollListener.SCROLL_STATE_TOUCH_SCROLL:
+                if (isPauseOnScroll) {
+                    cache.pause();
+                } else {
+                    cache.resume();
+                }
+                break;
+            case OnScrollListener.SCROLL_STATE_FLING:
+                if (isPauseOnFling) {
+                    cache.pause();
+                } else {
+                    cache.resume();
+                }
+                break;
+        }
+
+        if (customListener != null) {
+            customListener.onScrollStateChanged(view, scrollState);
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (customListener != null) {
+            customListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package cn.trinea.android.common.service.impl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import cn.trinea.android.common.entity.CacheObject;
@@ -35,8 +44,15 @@ import cn.trinea.android.common.util.SystemUtils;
  * {@link #DEFAULT_FORWARD_CACHE_NUMBER}</li>
  * <li>{@link #setBackwardCacheNumber(int)} set count for preload backward, default is
  * {@link #DEFAULT_BACKWARD_CACHE_NUMBER}</li>
+ * <li>{@link #setAdaptivePreload(boolean)} adjust preload count automatically according to scroll velocity and preload
+ * hit rate, bounds can be set by {@link #setForwardCacheNumberRange(int, int)} and
+ * {@link #setBackwardCacheNumberRange(int, int)}</li>
  * <li>{@link #setContext(Context)} and {@link #setAllowedNetworkTypes(int)} restrict the types of networks over which
  * this data can get.</li>
+ * <li>{@link #setContext(Context)} and {@link #setPreloadByteBudget(int, long)} restrict bytes per minute of preload
+ * over the types of networks.</li>
+ * <li>{@link #setLoadTimeOut(long)} set time out of waiting for data got, in mills</li>
+ * <li>{@link #pause()} and {@link #resume()} pause and resume preloading</li>
  * <li>{@link SimpleCache#setValidTime(long)} set valid time of elements in cache, in mills</li>
  * <li>{@link SimpleCache#saveCache(String, SimpleCache)} save cache to a file</li>
  * </ul>
@@ -59,6 +75,41 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
     /** count for preload backward, default is {@link #DEFAULT_BACKWARD_CACHE_NUMBER} **/
     private int                             backwardCacheNumber           = DEFAULT_BACKWARD_CACHE_NUMBER;
 
+    /** whether to adjust preload count according to scroll velocity and preload hit rate, default is false **/
+    private boolean                         isAdaptivePreload             = false;
+    /** min count for preload forward when adaptive **/
+    private int                             minForwardCacheNumber         = DEFAULT_MIN_CACHE_NUMBER;
+    /** max count for preload forward when adaptive **/
+    private int                             maxForwardCacheNumber         = DEFAULT_MAX_CACHE_NUMBER;
+    /** min count for preload backward when adaptive **/
+    private int                             minBackwardCacheNumber        = DEFAULT_MIN_CACHE_NUMBER;
+    /** max count for preload backward when adaptive **/
+    private int                             maxBackwardCacheNumber        = DEFAULT_MAX_CACHE_NUMBER;
+    /** index of last requested key in key list, used when adaptive **/
+    private int                             lastRequestIndex              = -1;
+    /** time of last requested key, in mills, used when adaptive **/
+    private long                            lastRequestTime;
+    /** smoothed move velocity of requested index, items per second, positive is forward **/
+    private double                          requestVelocity;
+    /** smoothed time of get data, in mills **/
+    private volatile long                   averageGetDataTime;
+    /** keys preloaded but not requested yet, used when adaptive, see {@link #recordPreload(Object)} **/
+    private Map<K, Boolean>                 preloadedKeyMap               = new PreloadedKeyMap();
+    /** count of preloaded keys which are requested or regarded as unused in current sample **/
+    private int                             preloadCount;
+    /** count of preloaded keys requested later in current sample **/
+    private int                             preloadUsedCount;
+    /** preload hit rate of last sample **/
+    private double                          preloadHitRate                = 1;
+
+    /** time out of waiting for data got, in mills, not greater than 0 means wait until data got **/
+    private long                            loadTimeOut                   = DEFAULT_LOAD_TIME_OUT;
+    /** count of waiting for data got time out **/
+    private AtomicLong                      loadTimeOutCount              = new AtomicLong(0);
+
+    /** whether paused, if true, not preload **/
+    private transient volatile boolean      isPaused;
+
     /** whether to check the network at first when get data **/
     private boolean                         isCheckNetwork                = true;
     /** allowed network type, default to all network types allowed **/
@@ -74,16 +125,41 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
     private transient Map<K, GetDataThread> gettingDataThreadMap          = new HashMap<K, GetDataThread>();
 
     /** getting data thread pool **/
-    private ExecutorService                 threadPool;
+    private Executor                        threadPool;
+    /** whether {@link #threadPool} is created by this cache, only thread pool of this cache will be shutdown **/
+    private boolean                         isOwnThreadPool;
 
     private Context                         context;
     private transient ConnectivityManager   connectivityManager;
+    /** receiver to refresh {@link #activeNetworkType} when connectivity changed **/
+    private transient BroadcastReceiver     networkStateReceiver;
+    /** cached type of active network, a constant from ConnectivityManager.TYPE_*, -1 means no active network **/
+    private transient volatile int          activeNetworkType             = -1;
+
+    /** preload byte budget per minute, key is NETWORK_* bit flag, value is bytes **/
+    private Map<Integer, Long>              preloadByteBudgetMap          = new HashMap<Integer, Long>();
+    /** network type of current budget window **/
+    private transient int                   budgetNetworkType             = -1;
+    /** start time of current budget window, in mills **/
+    private transient long                  budgetWindowStartTime;
+    /** bytes got in current budget window **/
+    private transient long                  budgetWindowBytes;
 
     /** default count for preload forward **/
     public static final int                 DEFAULT_FORWARD_CACHE_NUMBER  = 3;
     /** default count for preload backward **/
     public static final int                 DEFAULT_BACKWARD_CACHE_NUMBER = 1;
-
+    /** default min count for preload forward or backward when adaptive **/
+    public static final int                 DEFAULT_MIN_CACHE_NUMBER      = 1;
+    /** default max count for preload forward or backward when adaptive **/
+    public static final int                 DEFAULT_MAX_CACHE_NUMBER      = 10;
+    /** count of preloaded keys to recalculate preload hit rate when adaptive **/
+    private static final int                ADAPTIVE_SAMPLE_COUNT         = 32;
+    /** weight of new value when smooth velocity and get data time **/
+    private static final double             ADAPTIVE_SMOOTH_FACTOR        = 0.3;
+
+    /** default time out of waiting for data got, wait until data got **/
+    public static final long                DEFAULT_LOAD_TIME_OUT         = 0;
     /** default getting data thread pool size **/
     public static final int                 DEFAULT_THREAD_POOL_SIZE      = SystemUtils.getDefaultThreadPoolSize(8);
 
@@ -96,6 +172,11 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
      */
     public static final int                 NETWORK_WIFI                  = 1 << 1;
 
+    /** unlimited preload byte budget **/
+    public static final long                UNLIMITED_BYTE_BUDGET         = -1;
+    /** time of a budget window, in mills **/
+    private static final long               BUDGET_WINDOW_TIME            = 60 * 1000;
+
     /**
      * get data synchronous and preload new data asynchronous according to keyList
      * 
@@ -113,8 +194,7 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
 
         // if list is not null, preload data
         if (!ListUtils.isEmpty(keyList)) {
-            preloadDataForward(key, keyList, forwardCacheNumber);
-            preloadDataBackward(key, keyList, backwardCacheNumber);
+            preloadData(key, keyList);
         }
 
         return get(key);
@@ -125,14 +205,38 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
      * <ul>
      * <li>if key is null, return null, else</li>
      * <li>if key is already in cache, return the element that mapping with the specified key, else</li>
-     * <li>call {@link OnGetDataListener#onGetData(Object)} to get data and wait for it finish</li>
+     * <li>call {@link OnGetDataListener#onGetData(Object)} to get data and wait for it finish, or until
+     * {@link #getLoadTimeOut()} elapsed</li>
      * </ul>
      * 
      * @param key
      * @return element if this cache contains the specified key, else get data realtime and wait for it
+     * @see #get(Object, long, TimeUnit)
      */
     @Override
     public CacheObject<V> get(K key) {
+        return get(key, loadTimeOut, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * get data synchronous with time out
+     * <ul>
+     * <li>if key is null, return null, else</li>
+     * <li>if key is already in cache, return the element that mapping with the specified key, else</li>
+     * <li>call {@link OnGetDataListener#onGetData(Object)} to get data and wait for it finish, or until time out</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>If time out, only the waiting is abandoned, the getting data is still going on, and will be put into cache
+     * when finished. Later calls of the same key will wait for it rather than get data again</li>
+     * </ul>
+     * 
+     * @param key
+     * @param timeOut the maximum time to wait, not greater than 0 means wait until data got
+     * @param unit the time unit of timeOut
+     * @return element if this cache contains the specified key or data got in time, else null
+     */
+    public CacheObject<V> get(K key, long timeOut, TimeUnit unit) {
         if (key == null) {
             return null;
         }
@@ -143,7 +247,11 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
             // get data synchronous and wait for it
             if (getDataThread != null) {
                 try {
-                    getDataThread.finishGetDataLock.await();
+                    if (timeOut <= 0) {
+                        getDataThread.finishGetDataLock.await();
+                    } else if (!getDataThread.finishGetDataLock.await(timeOut, unit)) {
+                        loadTimeOutCount.incrementAndGet();
+                    }
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
@@ -160,6 +268,24 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
         return object;
     }
 
+    /**
+     * load element which is not in cache, called in getting data thread before
+     * {@link OnGetDataListener#onGetData(Object)}
+     * <ul>
+     * <li>It's used to load element lazily from db or file, rather than loading all elements at first</li>
+     * <li>Element loaded should be put into cache by implementation, and data is not got again</li>
+     * <li>Default return null, means no element can be loaded</li>
+     * <li>It's never called by {@link #get(Object)} or {@link #containsKey(Object)} directly, so they only look up
+     * elements in memory and are cheap to call in main thread</li>
+     * </ul>
+     * 
+     * @param key
+     * @return element loaded and put into cache, null if no element can be loaded
+     */
+    protected CacheObject<V> loadMissing(K key) {
+        return null;
+    }
+
     /**
      * get data from cache
      * 
@@ -187,13 +313,46 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
 
         // if list is not null, preload data
         if (!ListUtils.isEmpty(keyList)) {
-            preloadDataForward(key, keyList, forwardCacheNumber);
-            preloadDataBackward(key, keyList, backwardCacheNumber);
+            preloadData(key, keyList);
         }
 
         return getFromCache(key);
     }
 
+    /**
+     * preload data forward and backward
+     * <ul>
+     * <li>if {@link #isPaused()}, not preload</li>
+     * <li>if {@link #isAdaptivePreload()}, adjust preload count at first</li>
+     * <li>if preload byte budget of current network is set, preload count will be reduced by the rate of budget
+     * remained, and not preload if budget is used up, see {@link #setPreloadByteBudget(int, long)}</li>
+     * </ul>
+     * 
+     * @param key
+     * @param keyList
+     */
+    private void preloadData(K key, List<K> keyList) {
+        if (isPaused) {
+            return;
+        }
+
+        if (isAdaptivePreload) {
+            adjustCacheNumber(key, keyList);
+        }
+
+        double budgetRate = getPreloadBudgetRemainingRate();
+        if (budgetRate <= 0) {
+            return;
+        }
+        if (budgetRate >= 1) {
+            preloadDataForward(key, keyList, forwardCacheNumber);
+            preloadDataBackward(key, keyList, backwardCacheNumber);
+        } else {
+            preloadDataForward(key, keyList, (int)Math.ceil(forwardCacheNumber * budgetRate));
+            preloadDataBackward(key, keyList, (int)Math.ceil(backwardCacheNumber * budgetRate));
+        }
+    }
+
     /**
      * preload data forward
      * <ul>
@@ -226,6 +385,9 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
                     cachedCount++;
                     if (gettingData(k) != null) {
                         gettingDataCount++;
+                        if (isAdaptivePreload) {
+                            recordPreload(k);
+                        }
                     }
                 }
             }
@@ -265,6 +427,9 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
                     cachedCount++;
                     if (gettingData(k) != null) {
                         gettingDataCount++;
+                        if (isAdaptivePreload) {
+                            recordPreload(k);
+                        }
                     }
                 }
             }
@@ -272,6 +437,103 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
         return gettingDataCount;
     }
 
+    /**
+     * adjust count for preload forward and backward according to scroll velocity and preload hit rate
+     * <ul>
+     * <li>velocity is how many items the requested index moves per second, window of the moving direction will be
+     * velocity multiply average get data time, so preload can keep up with scrolling</li>
+     * <li>window of the other direction will shrink one by one</li>
+     * <li>if preload hit rate is less than 50%, window will shrink by the rate</li>
+     * <li>window is limited in range of {@link #setForwardCacheNumberRange(int, int)} and
+     * {@link #setBackwardCacheNumberRange(int, int)}</li>
+     * </ul>
+     * 
+     * @param key
+     * @param keyList
+     */
+    private synchronized void adjustCacheNumber(K key, List<K> keyList) {
+        if (preloadedKeyMap.remove(key) != null) {
+            recordPreloadResult(true);
+        }
+
+        int index = keyList.indexOf(key);
+        if (index < 0 || index == lastRequestIndex) {
+            return;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        if (lastRequestIndex >= 0) {
+            long intervalTime = Math.max(currentTime - lastRequestTime, 1);
+            double velocity = (index - lastRequestIndex) * 1000d / intervalTime;
+            // direction changed, forget the old velocity
+            if (velocity * requestVelocity < 0) {
+                requestVelocity = velocity;
+            } else {
+                requestVelocity += (velocity - requestVelocity) * ADAPTIVE_SMOOTH_FACTOR;
+            }
+
+            int cacheNumber = (int)Math.ceil(Math.abs(requestVelocity) * Math.max(averageGetDataTime, 1) / 1000);
+            if (preloadHitRate < 0.5) {
+                cacheNumber = (int)(cacheNumber * preloadHitRate * 2);
+            }
+            if (requestVelocity > 0) {
+                forwardCacheNumber = getNumberInRange(cacheNumber, minForwardCacheNumber, maxForwardCacheNumber);
+                backwardCacheNumber = getNumberInRange(backwardCacheNumber - 1, minBackwardCacheNumber,
+                        maxBackwardCacheNumber);
+            } else {
+                backwardCacheNumber = getNumberInRange(cacheNumber, minBackwardCacheNumber, maxBackwardCacheNumber);
+                forwardCacheNumber = getNumberInRange(forwardCacheNumber - 1, minForwardCacheNumber,
+                        maxForwardCacheNumber);
+            }
+        }
+        lastRequestIndex = index;
+        lastRequestTime = currentTime;
+    }
+
+    /**
+     * record key which is preloaded
+     * <ul>
+     * <li>key is kept until it's requested, or it's the eldest one when more than
+     * {@link #getMaxPreloadedKeyCount()} keys are waiting, then it's regarded as unused</li>
+     * </ul>
+     * 
+     * @param key
+     */
+    private synchronized void recordPreload(K key) {
+        if (!preloadedKeyMap.containsKey(key)) {
+            preloadedKeyMap.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * record result of a preloaded key, recalculate preload hit rate every {@link #ADAPTIVE_SAMPLE_COUNT} results
+     * 
+     * @param isUsed whether the preloaded key is requested
+     */
+    private synchronized void recordPreloadResult(boolean isUsed) {
+        if (isUsed) {
+            preloadUsedCount++;
+        }
+        if (++preloadCount >= ADAPTIVE_SAMPLE_COUNT) {
+            preloadHitRate = (double)preloadUsedCount / preloadCount;
+            preloadCount = 0;
+            preloadUsedCount = 0;
+        }
+    }
+
+    /**
+     * max count of keys preloaded but not requested yet, keys in preload window and one sample more
+     * 
+     * @return
+     */
+    private int getMaxPreloadedKeyCount() {
+        return maxForwardCacheNumber + maxBackwardCacheNumber + ADAPTIVE_SAMPLE_COUNT;
+    }
+
+    private static int getNumberInRange(int number, int min, int max) {
+        return number < min ? min : (number > max ? max : number);
+    }
+
     /**
      * get getting data thread
      * <ul>
@@ -294,7 +556,9 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
 
         GetDataThread getDataThread = new GetDataThread(key, onGetDataListener);
         gettingDataThreadMap.put(key, getDataThread);
-        threadPool.execute(getDataThread);
+        Executor executor = getGetDataThreadPool(key);
+        getDataThread.executor = executor;
+        executor.execute(getDataThread);
         return getDataThread;
 
     }
@@ -309,6 +573,65 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
         return gettingDataThreadMap.containsKey(key);
     }
 
+    /**
+     * remove the thread getting data of the key, only if it's the specified thread
+     * 
+     * @param key
+     * @param getDataThread
+     */
+    private synchronized void removeGettingDataThread(K key, GetDataThread getDataThread) {
+        if (gettingDataThreadMap != null && key != null && gettingDataThreadMap.get(key) == getDataThread) {
+            gettingDataThreadMap.remove(key);
+        }
+    }
+
+    /**
+     * get the thread pool to get data of the key, default is getting data thread pool of the cache
+     * <ul>
+     * <li>subclass can override it to get data of different keys in different thread pools, such as data got from
+     * local file and from network, so that the fast ones will not wait behind the slow ones</li>
+     * </ul>
+     * 
+     * @param key
+     * @return
+     */
+    protected Executor getGetDataThreadPool(K key) {
+        return threadPool;
+    }
+
+    /**
+     * cancel getting data of the key if it has not started
+     * <ul>
+     * <li>threads waiting for the data will be released and get null</li>
+     * <li>next getting data of the key will start a new thread</li>
+     * </ul>
+     * 
+     * @param key
+     * @return whether cancel success, false if not getting data or getting data has started
+     */
+    public synchronized boolean cancelGettingData(K key) {
+        GetDataThread getDataThread = (key == null ? null : gettingDataThreadMap.get(key));
+        if (getDataThread == null || !getDataThread.cancel()) {
+            return false;
+        }
+
+        gettingDataThreadMap.remove(key);
+        if (getDataThread.executor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor)getDataThread.executor).remove(getDataThread);
+        }
+        onGettingDataCancelled(key);
+        getDataThread.finishGetDataLock.countDown();
+        return true;
+    }
+
+    /**
+     * called when getting data of the key is cancelled, before threads waiting for the data are released, so they
+     * can see what is done here
+     * 
+     * @param key
+     */
+    protected void onGettingDataCancelled(K key) {}
+
     /**
      * <ul>
      * <li>Maximum size of the cache is {@link SimpleCache#DEFAULT_MAX_SIZE}</li>
@@ -350,6 +673,33 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
             throw new IllegalArgumentException("The threadPoolSize of cache must be greater than 0.");
         }
         this.threadPool = Executors.newFixedThreadPool(threadPoolSize);
+        this.isOwnThreadPool = true;
+    }
+
+    /**
+     * <ul>
+     * <li>Elements of the cache will not invalid, can set by {@link SimpleCache#setValidTime(long)}</li>
+     * <li>Remove type is {@link RemoveTypeEnterTimeFirst} when cache is full</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Thread pool can be shared with other caches to limit the number of threads of app, it will not be shutdown
+     * by {@link #shutdownNow()}, you need to shutdown it yourself</li>
+     * <li>Data is got in thread pool, so a bounded thread pool shared with tasks that waiting for the data got of this
+     * cache may deadlock when all threads are waiting</li>
+     * </ul>
+     * 
+     * @param maxSize maximum size of the cache
+     * @param threadPool getting data thread pool
+     */
+    public PreloadDataCache(int maxSize, Executor threadPool) {
+        super(maxSize);
+
+        if (threadPool == null) {
+            throw new IllegalArgumentException("The threadPool of cache can not be null.");
+        }
+        this.threadPool = threadPool;
+        this.isOwnThreadPool = false;
     }
 
     /**
@@ -388,6 +738,157 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
         this.backwardCacheNumber = backwardCacheNumber;
     }
 
+    /**
+     * get whether to adjust preload count according to scroll velocity and preload hit rate, default is false
+     * 
+     * @return
+     */
+    public boolean isAdaptivePreload() {
+        return isAdaptivePreload;
+    }
+
+    /**
+     * set whether to adjust preload count according to scroll velocity and preload hit rate, default is false
+     * <ul>
+     * <li>If true, {@link #getForwardCacheNumber()} and {@link #getBackwardCacheNumber()} will change with the
+     * requested index in key list of {@link #get(Object, List)}</li>
+     * <li>Range of preload count can be set by {@link #setForwardCacheNumberRange(int, int)} and
+     * {@link #setBackwardCacheNumberRange(int, int)}</li>
+     * </ul>
+     * 
+     * @param isAdaptivePreload
+     */
+    public void setAdaptivePreload(boolean isAdaptivePreload) {
+        this.isAdaptivePreload = isAdaptivePreload;
+    }
+
+    /**
+     * get min count for preload forward when adaptive, default is {@link #DEFAULT_MIN_CACHE_NUMBER}
+     * 
+     * @return
+     */
+    public int getMinForwardCacheNumber() {
+        return minForwardCacheNumber;
+    }
+
+    /**
+     * get max count for preload forward when adaptive, default is {@link #DEFAULT_MAX_CACHE_NUMBER}
+     * 
+     * @return
+     */
+    public int getMaxForwardCacheNumber() {
+        return maxForwardCacheNumber;
+    }
+
+    /**
+     * set range of count for preload forward when adaptive
+     * 
+     * @param minForwardCacheNumber min count, default is {@link #DEFAULT_MIN_CACHE_NUMBER}
+     * @param maxForwardCacheNumber max count, default is {@link #DEFAULT_MAX_CACHE_NUMBER}
+     */
+    public void setForwardCacheNumberRange(int minForwardCacheNumber, int maxForwardCacheNumber) {
+        if (minForwardCacheNumber < 0 || maxForwardCacheNumber < minForwardCacheNumber) {
+            throw new IllegalArgumentException("The range of forward cache number is illegal.");
+        }
+        this.minForwardCacheNumber = minForwardCacheNumber;
+        this.maxForwardCacheNumber = maxForwardCacheNumber;
+    }
+
+    /**
+     * get min count for preload backward when adaptive, default is {@link #DEFAULT_MIN_CACHE_NUMBER}
+     * 
+     * @return
+     */
+    public int getMinBackwardCacheNumber() {
+        return minBackwardCacheNumber;
+    }
+
+    /**
+     * get max count for preload backward when adaptive, default is {@link #DEFAULT_MAX_CACHE_NUMBER}
+     * 
+     * @return
+     */
+    public int getMaxBackwardCacheNumber() {
+        return maxBackwardCacheNumber;
+    }
+
+    /**
+     * set range of count for preload backward when adaptive
+     * 
+     * @param minBackwardCacheNumber min count, default is {@link #DEFAULT_MIN_CACHE_NUMBER}
+     * @param maxBackwardCacheNumber max count, default is {@link #DEFAULT_MAX_CACHE_NUMBER}
+     */
+    public void setBackwardCacheNumberRange(int minBackwardCacheNumber, int maxBackwardCacheNumber) {
+        if (minBackwardCacheNumber < 0 || maxBackwardCacheNumber < minBackwardCacheNumber) {
+            throw new IllegalArgumentException("The range of backward cache number is illegal.");
+        }
+        this.minBackwardCacheNumber = minBackwardCacheNumber;
+        this.maxBackwardCacheNumber = maxBackwardCacheNumber;
+    }
+
+    /**
+     * pause preloading, used when user is flinging a list and so on
+     * <ul>
+     * <li>preload will not start until {@link #resume()}, data of the key requested is still got</li>
+     * </ul>
+     */
+    public void pause() {
+        isPaused = true;
+    }
+
+    /**
+     * resume preloading paused by {@link #pause()}
+     */
+    public void resume() {
+        isPaused = false;
+    }
+
+    /**
+     * whether paused by {@link #pause()}
+     * 
+     * @return
+     */
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    /**
+     * get time out of waiting for data got, default is {@link #DEFAULT_LOAD_TIME_OUT}
+     * 
+     * @return time out in mills, not greater than 0 means wait until data got
+     */
+    public long getLoadTimeOut() {
+        return loadTimeOut;
+    }
+
+    /**
+     * set time out of waiting for data got, used by {@link #get(Object)} and {@link #get(Object, List)}
+     * 
+     * @param loadTimeOut time out in mills, not greater than 0 means wait until data got
+     */
+    public void setLoadTimeOut(long loadTimeOut) {
+        this.loadTimeOut = loadTimeOut;
+    }
+
+    /**
+     * get count of waiting for data got time out
+     * 
+     * @return
+     */
+    public long getLoadTimeOutCount() {
+        return loadTimeOutCount.get();
+    }
+
+    /**
+     * get preload hit rate of last {@link #ADAPTIVE_SAMPLE_COUNT} preloaded keys which are requested or regarded as
+     * unused, only calculated when adaptive
+     * 
+     * @return
+     */
+    public double getPreloadHitRate() {
+        return preloadHitRate;
+    }
+
     /**
      * get get data listener
      * 
@@ -452,11 +953,18 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
 
     /**
      * used when {@link #checkIsNetworkTypeAllowed()}
+     * <ul>
+     * <li>A receiver of {@link ConnectivityManager#CONNECTIVITY_ACTION} will be registered to application context to
+     * cache network state, so checking network will not call system service every time</li>
+     * </ul>
      * 
      * @param context
      */
     public void setContext(Context context) {
+        unregisterNetworkStateReceiver();
         this.context = context;
+        this.connectivityManager = null;
+        registerNetworkStateReceiver();
     }
 
     /**
@@ -479,9 +987,168 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
             return true;
         }
 
-        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        return networkInfo != null
-                && (allowedNetworkTypes == ~0 || (translateNetworkTypeToApiFlag(networkInfo.getType()) & allowedNetworkTypes) != 0);
+        int networkType = getActiveNetworkType();
+        return networkType != -1
+                && (allowedNetworkTypes == ~0 || (translateNetworkTypeToApiFlag(networkType) & allowedNetworkTypes) != 0);
+    }
+
+    /**
+     * get type of active network, use cached value if network state receiver is registered
+     * 
+     * @return a constant from ConnectivityManager.TYPE_*, -1 means no active network
+     */
+    private int getActiveNetworkType() {
+        if (networkStateReceiver == null) {
+            refreshNetworkState();
+        }
+        return activeNetworkType;
+    }
+
+    /**
+     * refresh {@link #activeNetworkType} from {@link ConnectivityManager}
+     */
+    private void refreshNetworkState() {
+        if (connectivityManager == null && context != null) {
+            connectivityManager = (ConnectivityManager)context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        }
+
+        NetworkInfo networkInfo = (connectivityManager == null ? null : connectivityManager.getActiveNetworkInfo());
+        activeNetworkType = (networkInfo == null ? -1 : networkInfo.getType());
+    }
+
+    /**
+     * register receiver to refresh network state when connectivity changed
+     */
+    private synchronized void registerNetworkStateReceiver() {
+        if (context == null || networkStateReceiver != null) {
+            return;
+        }
+
+        Context applicationContext = context.getApplicationContext();
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                refreshNetworkState();
+            }
+        };
+        try {
+            (applicationContext == null ? context : applicationContext).registerReceiver(receiver, new IntentFilter(
+                    ConnectivityManager.CONNECTIVITY_ACTION));
+            networkStateReceiver = receiver;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        refreshNetworkState();
+    }
+
+    /**
+     * unregister receiver registered by {@link #registerNetworkStateReceiver()}
+     */
+    private synchronized void unregisterNetworkStateReceiver() {
+        if (context == null || networkStateReceiver == null) {
+            return;
+        }
+
+        Context applicationContext = context.getApplicationContext();
+        try {
+            (applicationContext == null ? context : applicationContext).unregisterReceiver(networkStateReceiver);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        networkStateReceiver = null;
+    }
+
+    /**
+     * get preload byte budget per minute of the network type
+     * 
+     * @param networkType one of the NETWORK_* bit flags
+     * @return bytes per minute, {@link #UNLIMITED_BYTE_BUDGET} means unlimited
+     */
+    public synchronized long getPreloadByteBudget(int networkType) {
+        Long budget = preloadByteBudgetMap.get(networkType);
+        return budget == null ? UNLIMITED_BYTE_BUDGET : budget;
+    }
+
+    /**
+     * Set preload byte budget per minute of the network types. By default, all network types are unlimited.
+     * <ul>
+     * <li>All data got in a minute will be counted, if budget is remained, preload count will be reduced by the rate
+     * of budget remained, else not preload until next minute. Data got not for preload is not restricted.</li>
+     * <li>Bytes of data is calculated by {@link #getDataSize(CacheObject)}</li>
+     * </ul>
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>To make it effective, you need to ensure that {@link #getContext()} is not null</li>
+     * </ul>
+     * 
+     * @param networkTypes any combination of the NETWORK_* bit flags.
+     * @param bytesPerMinute bytes per minute, less than 0 means unlimited
+     */
+    public synchronized void setPreloadByteBudget(int networkTypes, long bytesPerMinute) {
+        for (int networkType : new int[] {NETWORK_MOBILE, NETWORK_WIFI}) {
+            if ((networkTypes & networkType) != 0) {
+                preloadByteBudgetMap.put(networkType, bytesPerMinute < 0 ? UNLIMITED_BYTE_BUDGET : bytesPerMinute);
+            }
+        }
+    }
+
+    /**
+     * get size of data in bytes, used to count preload byte budget, subclass can override it
+     * 
+     * @param object
+     * @return bytes of data, less than 0 means unknown and will not be counted
+     */
+    protected long getDataSize(CacheObject<V> object) {
+        return -1;
+    }
+
+    /**
+     * get rate of preload byte budget remained in current minute
+     * 
+     * @return 1 if budget is unlimited or not used, 0 if used up
+     */
+    protected synchronized double getPreloadBudgetRemainingRate() {
+        if (preloadByteBudgetMap.isEmpty() || context == null) {
+            return 1;
+        }
+
+        long budget = getPreloadByteBudget(translateNetworkTypeToApiFlag(getActiveNetworkType()));
+        if (budget < 0) {
+            return 1;
+        }
+        if (budget == 0) {
+            return 0;
+        }
+        refreshBudgetWindow();
+        return budgetWindowBytes >= budget ? 0 : (double)(budget - budgetWindowBytes) / budget;
+    }
+
+    /**
+     * count bytes of data got into current budget window
+     * 
+     * @param bytes
+     */
+    private synchronized void countBudgetBytes(long bytes) {
+        if (bytes <= 0 || preloadByteBudgetMap.isEmpty()) {
+            return;
+        }
+
+        refreshBudgetWindow();
+        budgetWindowBytes += bytes;
+    }
+
+    /**
+     * start a new budget window if network type is changed or current window is over
+     */
+    private void refreshBudgetWindow() {
+        long currentTime = System.currentTimeMillis();
+        int networkType = getActiveNetworkType();
+        if (networkType != budgetNetworkType || currentTime - budgetWindowStartTime >= BUDGET_WINDOW_TIME) {
+            budgetNetworkType = networkType;
+            budgetWindowStartTime = currentTime;
+            budgetWindowBytes = 0;
+        }
     }
 
     /**
@@ -512,17 +1179,29 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
     }
 
     /**
+     * shutdown thread pool if it's created by this cache
+     * 
      * @see ExecutorService#shutdown()
      */
     protected void shutdown() {
-        threadPool.shutdown();
+        unregisterNetworkStateReceiver();
+        if (isOwnThreadPool) {
+            ((ExecutorService)threadPool).shutdown();
+        }
     }
 
     /**
+     * shutdown thread pool if it's created by this cache
+     * 
+     * @return list of tasks that never commenced execution, empty if thread pool is not created by this cache
      * @see ExecutorService#shutdownNow()
      */
     public List<Runnable> shutdownNow() {
-        return threadPool.shutdownNow();
+        unregisterNetworkStateReceiver();
+        if (isOwnThreadPool) {
+            return ((ExecutorService)threadPool).shutdownNow();
+        }
+        return new ArrayList<Runnable>();
     }
 
     /**
@@ -553,6 +1232,12 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
 
         /** get data and cache finish lock, it will be released then **/
         public CountDownLatch           finishGetDataLock;
+        /** whether getting data has started **/
+        private boolean                 isStarted;
+        /** whether getting data has been cancelled **/
+        private boolean                 isCancelled;
+        /** thread pool which executes this **/
+        private Executor                executor;
 
         /**
          * @param key
@@ -564,19 +1249,74 @@ public class PreloadDataCache<K, V> extends SimpleCache<K, V> {
             finishGetDataLock = new CountDownLatch(1);
         }
 
+        /**
+         * cancel getting data if it has not started
+         * 
+         * @return whether cancel success
+         */
+        public synchronized boolean cancel() {
+            if (isStarted) {
+                return false;
+            }
+            isCancelled = true;
+            return true;
+        }
+
+        /**
+         * mark getting data started if it has not been cancelled
+         * 
+         * @return whether start success
+         */
+        private synchronized boolean start() {
+            if (isCancelled) {
+                return false;
+            }
+            isStarted = true;
+            return true;
+        }
+
         public void run() {
-            if (key != null && onGetDataListener != null) {
-                CacheObject<V> object = onGetDataListener.onGetData(key);
-                if (object != null) {
-                    put(key, object);
-                }
+            if (!start()) {
+                return;
             }
-            // get data success, release lock
-            finishGetDataLock.countDown();
 
-            if (gettingDataThreadMap != null && key != null) {
-                gettingDataThreadMap.remove(key);
+            try {
+                if (key != null && onGetDataListener != null && loadMissing(key) == null) {
+                    long startTime = System.currentTimeMillis();
+                    CacheObject<V> object = onGetDataListener.onGetData(key);
+                    if (object != null) {
+                        put(key, object);
+                        countBudgetBytes(getDataSize(object));
+                    }
+                    long getDataTime = System.currentTimeMillis() - startTime;
+                    averageGetDataTime = averageGetDataTime == 0 ? getDataTime : averageGetDataTime
+                            + (long)((getDataTime - averageGetDataTime) * ADAPTIVE_SMOOTH_FACTOR);
+                }
+            } finally {
+                // get data finish, release lock even if get data failed, so that waiting threads will not hang
+                removeGettingDataThread(key, this);
+                finishGetDataLock.countDown();
             }
         }
     };
+
+    /**
+     * keys preloaded but not requested yet in preload order, the eldest is removed and regarded as unused when more
+     * than {@link PreloadDataCache#getMaxPreloadedKeyCount()}
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-7-3
+     */
+    private class PreloadedKeyMap extends LinkedHashMap<K, Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Boolean> eldest) {
+            if (size() <= getMaxPreloadedKeyCount()) {
+                return false;
+            }
+            recordPreloadResult(false);
+            return true;
+        }
+    }
 }
@@ -8,6 +8,7 @@ import cn.trinea.android.common.util.FileUtils;
  * Remove type when cache is full, data type of cache is string, and it represents the path of a file.<br/>
  * <ul>
  * <li>if file is larger, remove it first</li>
+ * <li>size of file is {@link CacheObject#getSize()}, only get from file system if it's unknown</li>
  * <li>if file is equal to each other, remove the one which is used less</li>
  * <li>if file is equal to each other and used count is equal, remove the one which is first in</li>
  * </ul>
@@ -20,8 +21,8 @@ public class RemoveTypeFileLarge implements CacheFullRemoveType<String> {
 
     @Override
     public int compare(CacheObject<String> obj1, CacheObject<String> obj2) {
-        long sizeOfFile1 = (obj1 == null ? -1 : FileUtils.getFileSize(obj1.getData()));
-        long sizeOfFile2 = (obj2 == null ? -1 : FileUtils.getFileSize(obj2.getData()));
+        long sizeOfFile1 = getFileSize(obj1);
+        long sizeOfFile2 = getFileSize(obj2);
         if (sizeOfFile1 == sizeOfFile2) {
             if (obj1.getUsedCount() == obj2.getUsedCount()) {
                 return (obj1.getEnterTime() > obj2.getEnterTime()) ? 1
@@ -31,4 +32,19 @@ public class RemoveTypeFileLarge implements CacheFullRemoveType<String> {
         }
         return (sizeOfFile2 > sizeOfFile1 ? 1 : -1);
     }
+
+    /**
+     * get size of file, use {@link CacheObject#getSize()} if it's known, else get it from file system
+     * 
+     * @param obj
+     * @return -1 if obj is null
+     */
+    static long getFileSize(CacheObject<String> obj) {
+        if (obj == null) {
+            return -1;
+        }
+
+        long size = obj.getSize();
+        return size < 0 ? FileUtils.getFileSize(obj.getData()) : size;
+    }
 }
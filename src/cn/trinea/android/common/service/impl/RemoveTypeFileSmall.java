@@ -2,12 +2,12 @@ package cn.trinea.android.common.service.impl;
 
 import cn.trinea.android.common.entity.CacheObject;
 import cn.trinea.android.common.service.CacheFullRemoveType;
-import cn.trinea.android.common.util.FileUtils;
 
 /**
  * Remove type when cache is full, data type of cache is string, and it represents the path of a file.<br/>
  * <ul>
  * <li>if file is smaller, remove it first</li>
+ * <li>size of file is {@link CacheObject#getSize()}, only get from file system if it's unknown</li>
  * <li>if file is equal to each other, remove the one which is used less</li>
  * <li>if file is equal to each other and used count is equal, remove the one which is first in</li>
  * </ul>
@@ -20,8 +20,8 @@ public class RemoveTypeFileSmall implements CacheFullRemoveType<String> {
 
     @Override
     public int compare(CacheObject<String> obj1, CacheObject<String> obj2) {
-        long sizeOfFile1 = (obj1 == null ? -1 : FileUtils.getFileSize(obj1.getData()));
-        long sizeOfFile2 = (obj2 == null ? -1 : FileUtils.getFileSize(obj2.getData()));
+        long sizeOfFile1 = RemoveTypeFileLarge.getFileSize(obj1);
+        long sizeOfFile2 = RemoveTypeFileLarge.getFileSize(obj2);
         if (sizeOfFile1 == sizeOfFile2) {
             if (obj1.getUsedCount() == obj2.getUsedCount()) {
                 return (obj1.getEnterTime() > obj2.getEnterTime()) ? 1
@@ -42,6 +42,10 @@ import cn.trinea.android.common.util.SerializeUtils;
  * <strong>About size of cache</strong>
  * <li>{@link #getMaxSize()} get the maximum capacity of the cache</li>
  * <li>{@link #getSize()} get the number of elements in the cache valid</li>
+ * <li>{@link #trimToSize(int)} remove elements until size of cache is not greater than the specified size</li>
+ * <li>{@link #setMaxBytes(long)} set the maximum bytes of the cache, counted by {@link CacheObject#getSize()}</li>
+ * <li>{@link #getCurrentBytes()} get bytes of elements in the cache</li>
+ * <li>{@link #trimToBytes(long)} remove elements until bytes of cache is not greater than the specified bytes</li>
  * </ul>
  * <ul>
  * <strong>Other interfaces same to {@link Map} </strong>
@@ -65,6 +69,11 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
     /** remove type when cache is full **/
     private CacheFullRemoveType<V>   cacheFullRemoveType;
 
+    /** maximum bytes of the cache, counted by {@link CacheObject#getSize()}, not limited if not greater than 0 **/
+    private long                     maxBytes         = -1;
+    /** bytes of elements in the cache, sum of {@link CacheObject#getSize()} which is not less than 0 **/
+    private long                     currentBytes;
+
     /** map to storage element **/
     protected Map<K, CacheObject<V>> cache;
 
@@ -152,6 +161,41 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
         this.cacheFullRemoveType = cacheFullRemoveType;
     }
 
+    /**
+     * get the maximum bytes of the cache, counted by {@link CacheObject#getSize()}, not limited if not greater than 0
+     * 
+     * @return
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * set the maximum bytes of the cache, counted by {@link CacheObject#getSize()}
+     * <ul>
+     * <li>When put and bytes of cache will be greater than it, elements will be removed according to
+     * {@link #getCacheFullRemoveType()} until not, see {@link #trimToBytes(long)}</li>
+     * <li>Elements whose size is unknown(less than 0) are not counted</li>
+     * </ul>
+     * 
+     * @param maxBytes not limited if not greater than 0, default is not limited
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes <= 0 ? -1 : maxBytes;
+        if (this.maxBytes > 0) {
+            trimToBytes(this.maxBytes);
+        }
+    }
+
+    /**
+     * get bytes of elements in the cache, sum of {@link CacheObject#getSize()} which is not less than 0
+     * 
+     * @return
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
     /**
      * get the number of elements in the cache valid
      * 
@@ -219,6 +263,9 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
      */
     @Override
     public synchronized CacheObject<V> put(K key, CacheObject<V> value) {
+        if (maxBytes > 0 && value.getSize() > 0 && currentBytes + value.getSize() > maxBytes) {
+            trimToBytes(maxBytes > value.getSize() ? maxBytes - value.getSize() : 0);
+        }
         if (cache.size() >= maxSize) {
             if (removeExpired() <= 0) {
                 if (cacheFullRemoveType instanceof RemoveTypeNotRemove) {
@@ -230,7 +277,8 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
             }
         }
         value.setEnterTime(System.currentTimeMillis());
-        cache.put(key, value);
+        removeBytes(cache.put(key, value));
+        addBytes(value.getSize());
         return value;
     }
 
@@ -278,7 +326,9 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
      */
     @Override
     public CacheObject<V> remove(K key) {
-        return cache.remove(key);
+        CacheObject<V> value = cache.remove(key);
+        removeBytes(value);
+        return value;
     }
 
     /**
@@ -312,11 +362,58 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
             }
         }
         if (keyToRemove != null) {
-            cache.remove(keyToRemove);
+            removeBytes(cache.remove(keyToRemove));
         }
         return valueToRemove;
     }
 
+    /**
+     * remove elements until size of cache is not greater than the specified size
+     * <ul>
+     * <li>remove invalid elements at first</li>
+     * <li>then remove elements one by one according to {@link #getCacheFullRemoveType()}, see {@link #fullRemoveOne()}
+     * </li>
+     * </ul>
+     * 
+     * @param size
+     * @return the count be removed
+     */
+    public synchronized int trimToSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size of cache must not be less than 0.");
+        }
+
+        int count = cache.size() > size ? removeExpired() : 0;
+        while (cache.size() > size && fullRemoveOne() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * remove elements until bytes of cache is not greater than the specified bytes
+     * <ul>
+     * <li>remove invalid elements at first</li>
+     * <li>then remove elements one by one according to {@link #getCacheFullRemoveType()}, see {@link #fullRemoveOne()}
+     * </li>
+     * <li>bytes of cache is counted by {@link CacheObject#getSize()}, file system or other will not be touched</li>
+     * </ul>
+     * 
+     * @param bytes
+     * @return the count be removed
+     */
+    public synchronized int trimToBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The bytes of cache must not be less than 0.");
+        }
+
+        int count = currentBytes > bytes ? removeExpired() : 0;
+        while (currentBytes > bytes && fullRemoveOne() != null) {
+            count++;
+        }
+        return count;
+    }
+
     /**
      * remove invalid elements
      * 
@@ -331,7 +428,7 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
         // because cache is instance of ConcurrentHashMap, so you can remove when iterator
         for (Entry<K, CacheObject<V>> entry : cache.entrySet()) {
             if (entry != null && isExpired(entry.getValue())) {
-                cache.remove(entry.getKey());
+                removeBytes(cache.remove(entry.getKey()));
                 count++;
             }
         }
@@ -345,7 +442,32 @@ public class SimpleCache<K, V> implements Cache<K, V>, Serializable {
      */
     @Override
     public void clear() {
-        cache.clear();
+        synchronized (this) {
+            cache.clear();
+            currentBytes = 0;
+        }
+    }
+
+    /**
+     * add bytes of element to {@link #getCurrentBytes()}
+     * 
+     * @param size
+     */
+    private synchronized void addBytes(long size) {
+        if (size > 0) {
+            currentBytes += size;
+        }
+    }
+
+    /**
+     * remove bytes of element from {@link #getCurrentBytes()}
+     * 
+     * @param value
+     */
+    private synchronized void removeBytes(CacheObject<V> value) {
+        if (value != null && value.getSize() > 0) {
+            currentBytes = currentBytes > value.getSize() ? currentBytes - value.getSize() : 0;
+        }
     }
 
     /**
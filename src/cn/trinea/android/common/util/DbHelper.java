@@ -33,5 +33,17 @@ public class DbHelper extends SQLiteOpenHelper {
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {}
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.beginTransaction();
+        try {
+            if (oldVersion < 2) {
+                for (String sql : DbConstants.UPGRADE_HTTP_CACHE_TABLE_TO_2_SQL) {
+                    db.execSQL(sql);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
 }
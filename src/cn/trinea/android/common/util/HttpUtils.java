@@ -1,8 +1,11 @@
 package cn.trinea.android.common.util;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -10,6 +13,10 @@ import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import android.os.AsyncTask;
 import cn.trinea.android.common.constant.HttpConstants;
@@ -26,6 +33,9 @@ import cn.trinea.android.common.service.HttpCache;
  * <li>{@link #httpGetString(String)} http get synchronous, response is String</li>
  * <li>{@link #httpGet(HttpRequest, HttpListener)} http get asynchronous</li>
  * <li>{@link #httpGet(String, HttpListener)} http get asynchronous</li>
+ * <li>{@link #httpGetBytes(HttpRequest)} http get synchronous, response body is bytes</li>
+ * <li>{@link #httpGetStream(HttpRequest, HttpStreamListener)} http get synchronous, response body is handed to
+ * listener as stream</li>
  * </ul>
  * <ul>
  * <strong>Http post</strong>
@@ -43,6 +53,20 @@ import cn.trinea.android.common.service.HttpCache;
  * <li>{@link #appendParaToUrl(String, String, String)}</li>
  * <li>{@link #parseGmtTime(String)}</li>
  * </ul>
+ * <ul>
+ * <strong>Connection reuse</strong>
+ * <li>{@link #setKeepAlive(boolean)} set whether keep connections alive and reuse them, default is false</li>
+ * <li>{@link #setMaxConnections(int)} set max idle connections kept alive per host</li>
+ * <li>{@link #setKeepAliveDuration(long)} set how long an idle connection is kept alive</li>
+ * <li>{@link #releaseConnection(HttpURLConnection, boolean)} release connection after response read</li>
+ * </ul>
+ * <ul>
+ * <strong>Compression</strong>
+ * <li>{@link #setAcceptEncoding(boolean)} set whether send Accept-Encoding and decode gzip or deflate response</li>
+ * <li>{@link #getReceivedBytes()} bytes of response body received</li>
+ * <li>{@link #getDecodedBytes()} bytes of response body after decoded</li>
+ * <li>{@link #resetTrafficStats()} reset received bytes and decoded bytes</li>
+ * </ul>
  * 
  * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2013-5-12
  */
@@ -57,6 +81,30 @@ public class HttpUtils {
     /** equal sign **/
     public static final String EQUAL_SIGN             = "=";
 
+    /** default charset of response body if no charset in Content-Type **/
+    public static final String DEFAULT_CHARSET        = "UTF-8";
+
+    /** max bytes drained from a response to reuse its connection, connection is disconnected if more than it **/
+    private static final int   MAX_DRAIN_BYTES        = 64 * 1024;
+
+    /** whether keep connections alive and reuse them, default is false **/
+    private static volatile boolean isKeepAlive      = false;
+    /** whether send Accept-Encoding and decode gzip or deflate response, default is true **/
+    private static volatile boolean isAcceptEncoding = true;
+    /** bytes of response body received, compressed if response is compressed **/
+    private static final AtomicLong RECEIVED_BYTES   = new AtomicLong(0);
+    /** bytes of response body after decoded **/
+    private static final AtomicLong DECODED_BYTES    = new AtomicLong(0);
+
+    /** buffer used to read response body, one per thread so it can be reused **/
+    private static final ThreadLocal<byte[]> STREAM_BUFFER = new ThreadLocal<byte[]>() {
+
+                                                               @Override
+                                                               protected byte[] initialValue() {
+                                                                   return new byte[8 * 1024];
+                                                               }
+                                                           };
+
     private HttpUtils() {
         throw new AssertionError();
     }
@@ -64,51 +112,15 @@ public class HttpUtils {
     /**
      * http get synchronous
      * <ul>
-     * <li>use gzip compression default</li>
-     * <li>use bufferedReader to improve the reading speed</li>
+     * <li>use gzip compression default, see {@link #setAcceptEncoding(boolean)}</li>
+     * <li>response body is decoded by charset in Content-Type, default is {@link #DEFAULT_CHARSET}</li>
      * </ul>
      * 
      * @param request
      * @return the response of the url, if null represents http error
      */
     public static HttpResponse httpGet(HttpRequest request) {
-        if (request == null) {
-            return null;
-        }
-
-        BufferedReader input = null;
-        HttpURLConnection con = null;
-        try {
-            URL url = new URL(request.getUrl());
-            try {
-                HttpResponse response = new HttpResponse(request.getUrl());
-                // default gzip encode
-                con = (HttpURLConnection)url.openConnection();
-                setURLConnection(request, con);
-                input = new BufferedReader(new InputStreamReader(con.getInputStream()));
-                StringBuilder sb = new StringBuilder();
-                String s;
-                while ((s = input.readLine()) != null) {
-                    sb.append(s).append("\n");
-                }
-                response.setResponseBody(sb.toString());
-                setHttpResponse(con, response);
-                return response;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } catch (MalformedURLException e1) {
-            e1.printStackTrace();
-        } finally {
-            // close buffered
-            IOUtils.closeQuietly(input);
-            // disconnecting releases the resources held by a connection so they may be closed or reused
-            if (con != null) {
-                con.disconnect();
-            }
-        }
-
-        return null;
+        return httpRequest(request, false, new BodyStreamListener(false));
     }
 
     /**
@@ -178,62 +190,158 @@ public class HttpUtils {
     }
 
     /**
-     * http post
+     * http get synchronous, get response body as bytes
      * <ul>
-     * <li>use gzip compression default</li>
-     * <li>use bufferedReader to improve the reading speed</li>
+     * <li>response body is not decoded, use {@link HttpResponse#getResponseBytes()} to get it, it's suitable for
+     * binary data</li>
      * </ul>
      * 
+     * @param request
+     * @return the response of the url, if null represents http error
+     */
+    public static HttpResponse httpGetBytes(HttpRequest request) {
+        return httpRequest(request, false, new BodyStreamListener(true));
+    }
+
+    /**
+     * http get synchronous, get response body as bytes
+     * 
      * @param httpUrl
-     * @param paras
      * @return the response of the url, if null represents http error
+     * @see HttpUtils#httpGetBytes(HttpRequest)
      */
-    public static HttpResponse httpPost(HttpRequest request) {
+    public static HttpResponse httpGetBytes(String httpUrl) {
+        return httpGetBytes(new HttpRequest(httpUrl));
+    }
+
+    /**
+     * http get synchronous, response body is handed to listener as stream
+     * <ul>
+     * <li>Response body is neither decoded nor kept in memory, listener can read raw input stream in
+     * {@link HttpStreamListener#onStream(InputStream, HttpResponse)}, or get chunks in
+     * {@link HttpStreamListener#onChunk(byte[], int, int)}</li>
+     * <li>listener runs on the calling thread</li>
+     * </ul>
+     * 
+     * @param request
+     * @param listener
+     * @return the response of the url without body, if null represents http error
+     */
+    public static HttpResponse httpGetStream(HttpRequest request, HttpStreamListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener of httpGetStream cannot be null.");
+        }
+        return httpRequest(request, false, listener);
+    }
+
+    /**
+     * http post synchronous, response body is handed to listener as stream
+     * 
+     * @param request
+     * @param listener
+     * @return the response of the url without body, if null represents http error
+     * @see HttpUtils#httpGetStream(HttpRequest, HttpStreamListener)
+     */
+    public static HttpResponse httpPostStream(HttpRequest request, HttpStreamListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener of httpPostStream cannot be null.");
+        }
+        return httpRequest(request, true, listener);
+    }
+
+    /**
+     * http request synchronous, response body is handed to listener
+     * 
+     * @param request
+     * @param isPost
+     * @param listener
+     * @return the response of the url, if null represents http error
+     */
+    private static HttpResponse httpRequest(HttpRequest request, boolean isPost, HttpStreamListener listener) {
         if (request == null) {
             return null;
         }
 
-        BufferedReader input = null;
+        InputStream input = null;
         HttpURLConnection con = null;
+        boolean isComplete = false;
         try {
             URL url = new URL(request.getUrl());
             try {
                 HttpResponse response = new HttpResponse(request.getUrl());
-                // default gzip encode
                 con = (HttpURLConnection)url.openConnection();
                 setURLConnection(request, con);
-                con.setRequestMethod("POST");
-                con.setDoOutput(true);
-                String paras = request.getParas();
-                if (!StringUtils.isEmpty(paras)) {
-                    con.getOutputStream().write(paras.getBytes());
+                // default gzip encode
+                if (isAcceptEncoding && !containsIgnoreCase(request.getRequestProperties(), "Accept-Encoding")) {
+                    con.setRequestProperty("Accept-Encoding", "gzip, deflate");
                 }
-                input = new BufferedReader(new InputStreamReader(con.getInputStream()));
-                StringBuilder sb = new StringBuilder();
-                String s;
-                while ((s = input.readLine()) != null) {
-                    sb.append(s).append("\n");
+                if (isPost) {
+                    con.setRequestMethod("POST");
+                    con.setDoOutput(true);
+                    String paras = request.getParas();
+                    if (!StringUtils.isEmpty(paras)) {
+                        con.getOutputStream().write(paras.getBytes());
+                    }
                 }
-                response.setResponseBody(sb.toString());
+                input = getInputStream(con);
                 setHttpResponse(con, response);
+                listener.onStream(input, response);
+                isComplete = drain(input);
                 return response;
             } catch (IOException e) {
                 e.printStackTrace();
+                isComplete = drainErrorStream(con);
             }
         } catch (MalformedURLException e1) {
             e1.printStackTrace();
         } finally {
-            // close buffered
             IOUtils.closeQuietly(input);
-            // disconnecting releases the resources held by a connection so they may be closed or reused
-            if (con != null) {
-                con.disconnect();
-            }
+            releaseConnection(con, isComplete);
         }
 
         return null;
     }
 
+    /**
+     * get charset from Content-Type, such as UTF-8 of text/html; charset=UTF-8
+     * 
+     * @param contentType
+     * @param defaultCharset
+     * @return defaultCharset if contentType is empty or no charset in it
+     */
+    public static String getCharset(String contentType, String defaultCharset) {
+        if (StringUtils.isEmpty(contentType)) {
+            return defaultCharset;
+        }
+
+        int start = contentType.toLowerCase().indexOf("charset=");
+        if (start == -1) {
+            return defaultCharset;
+        }
+        start += "charset=".length();
+        int end = contentType.indexOf(';', start);
+        String charset = (end == -1 ? contentType.substring(start) : contentType.substring(start, end)).trim();
+        if (charset.length() > 1 && charset.charAt(0) == '"' && charset.charAt(charset.length() - 1) == '"') {
+            charset = charset.substring(1, charset.length() - 1);
+        }
+        return StringUtils.isEmpty(charset) ? defaultCharset : charset;
+    }
+
+    /**
+     * http post
+     * <ul>
+     * <li>use gzip compression default, see {@link #setAcceptEncoding(boolean)}</li>
+     * <li>response body is decoded by charset in Content-Type, default is {@link #DEFAULT_CHARSET}</li>
+     * </ul>
+     * 
+     * @param httpUrl
+     * @param paras
+     * @return the response of the url, if null represents http error
+     */
+    public static HttpResponse httpPost(HttpRequest request) {
+        return httpRequest(request, true, new BodyStreamListener(false));
+    }
+
     /**
      * http post
      * 
@@ -402,6 +510,262 @@ public class HttpUtils {
         return -1;
     }
 
+    /**
+     * get whether keep connections alive and reuse them, default is false
+     * 
+     * @return
+     */
+    public static boolean isKeepAlive() {
+        return isKeepAlive;
+    }
+
+    /**
+     * set whether keep connections alive and reuse them, default is false
+     * <ul>
+     * <li>If true, connection will not be disconnected after response read, response is drained and closed so that the
+     * socket returns to the pool of {@link HttpURLConnection}, sequential requests to the same host reuse one
+     * connection without TCP and TLS handshake</li>
+     * <li>If false, connection will be disconnected after response read, same as before</li>
+     * <li>If true, it also sets system property http.keepAlive to true, which is read by {@link HttpURLConnection}.
+     * If set false after true, the property is cleared, so other connections of the process use default</li>
+     * </ul>
+     * 
+     * @param isKeepAlive
+     */
+    public static synchronized void setKeepAlive(boolean isKeepAlive) {
+        if (isKeepAlive) {
+            System.setProperty("http.keepAlive", "true");
+        } else if (HttpUtils.isKeepAlive) {
+            System.clearProperty("http.keepAlive");
+        }
+        HttpUtils.isKeepAlive = isKeepAlive;
+    }
+
+    /**
+     * set max idle connections kept alive per host, it sets system property http.maxConnections
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Connection pool of {@link HttpURLConnection} reads it when created, so you should set it before the first
+     * request</li>
+     * </ul>
+     * 
+     * @param maxConnections
+     */
+    public static void setMaxConnections(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("The maxConnections must be greater than 0.");
+        }
+        System.setProperty("http.maxConnections", Integer.toString(maxConnections));
+    }
+
+    /**
+     * set how long an idle connection is kept alive, it sets system property http.keepAliveDuration
+     * <ul>
+     * <strong>Attentions:</strong>
+     * <li>Connection pool of {@link HttpURLConnection} reads it when created, so you should set it before the first
+     * request</li>
+     * </ul>
+     * 
+     * @param keepAliveDurationMillis in mills
+     */
+    public static void setKeepAliveDuration(long keepAliveDurationMillis) {
+        if (keepAliveDurationMillis <= 0) {
+            throw new IllegalArgumentException("The keepAliveDuration must be greater than 0.");
+        }
+        System.setProperty("http.keepAliveDuration", Long.toString(keepAliveDurationMillis));
+    }
+
+    /**
+     * get whether send Accept-Encoding and decode gzip or deflate response, default is true
+     * 
+     * @return
+     */
+    public static boolean isAcceptEncoding() {
+        return isAcceptEncoding;
+    }
+
+    /**
+     * set whether send Accept-Encoding and decode gzip or deflate response, default is true
+     * <ul>
+     * <li>If true, Accept-Encoding: gzip, deflate is sent when request has no Accept-Encoding property</li>
+     * <li>Response is decoded according to its Content-Encoding whatever it is, so you can also set Accept-Encoding
+     * of request yourself</li>
+     * </ul>
+     * 
+     * @param isAcceptEncoding
+     */
+    public static void setAcceptEncoding(boolean isAcceptEncoding) {
+        HttpUtils.isAcceptEncoding = isAcceptEncoding;
+    }
+
+    /**
+     * get bytes of response body received since started or {@link #resetTrafficStats()}, compressed if response is
+     * compressed
+     * 
+     * @return
+     */
+    public static long getReceivedBytes() {
+        return RECEIVED_BYTES.get();
+    }
+
+    /**
+     * get bytes of response body after decoded since started or {@link #resetTrafficStats()}, compare it with
+     * {@link #getReceivedBytes()} to get compression ratio
+     * 
+     * @return
+     */
+    public static long getDecodedBytes() {
+        return DECODED_BYTES.get();
+    }
+
+    /**
+     * reset received bytes and decoded bytes to 0
+     */
+    public static void resetTrafficStats() {
+        RECEIVED_BYTES.set(0);
+        DECODED_BYTES.set(0);
+    }
+
+    /**
+     * get input stream of connection, decode it according to Content-Encoding
+     * 
+     * @param urlConnection
+     * @return
+     * @throws IOException
+     */
+    private static InputStream getInputStream(HttpURLConnection urlConnection) throws IOException {
+        InputStream input = new CountingInputStream(urlConnection.getInputStream(), RECEIVED_BYTES);
+        String encoding = urlConnection.getContentEncoding();
+        if (encoding == null) {
+            return new CountingInputStream(input, DECODED_BYTES);
+        }
+
+        encoding = encoding.trim().toLowerCase();
+        boolean isGzip = "gzip".equals(encoding) || "x-gzip".equals(encoding);
+        if (!isGzip && !"deflate".equals(encoding)) {
+            return new CountingInputStream(input, DECODED_BYTES);
+        }
+
+        // peek first two bytes, body of some response such as HEAD is empty
+        PushbackInputStream pushback = new PushbackInputStream(input, 2);
+        int b0 = pushback.read();
+        if (b0 == -1) {
+            return pushback;
+        }
+        int b1 = pushback.read();
+        if (b1 != -1) {
+            pushback.unread(b1);
+        }
+        pushback.unread(b0);
+
+        if (isGzip) {
+            input = new GZIPInputStream(pushback, 8 * 1024);
+        } else {
+            // some servers send raw deflate data without zlib header
+            boolean isZlib = b1 != -1 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+            input = new InflaterInputStream(pushback, new Inflater(!isZlib), 8 * 1024) {
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+        return new CountingInputStream(input, DECODED_BYTES);
+    }
+
+    /**
+     * whether map contains the key ignore case
+     * 
+     * @param map
+     * @param key
+     * @return
+     */
+    private static boolean containsIgnoreCase(Map<String, String> map, String key) {
+        if (MapUtils.isEmpty(map)) {
+            return false;
+        }
+        for (String k : map.keySet()) {
+            if (key.equalsIgnoreCase(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * release connection after response read
+     * <ul>
+     * <li>If {@link #isKeepAlive()} and response is read completely, connection is not disconnected, so it can be
+     * reused</li>
+     * <li>Else disconnect it, because the state of socket is unknown</li>
+     * </ul>
+     * 
+     * @param urlConnection
+     * @param isComplete whether response is read completely and input stream is closed
+     */
+    public static void releaseConnection(HttpURLConnection urlConnection, boolean isComplete) {
+        if (urlConnection != null && !(isKeepAlive && isComplete)) {
+            // disconnecting releases the resources held by a connection so they may be closed or reused
+            urlConnection.disconnect();
+        }
+    }
+
+    /**
+     * drain and close error stream of connection, so that connection can be reused
+     * <ul>
+     * <li>You can use it after an error response got, then pass the result to
+     * {@link #releaseConnection(HttpURLConnection, boolean)}</li>
+     * </ul>
+     * 
+     * @param urlConnection
+     * @return whether drained completely, false if not keep alive or error stream is larger than
+     *         {@link #MAX_DRAIN_BYTES}
+     */
+    public static boolean drainErrorStream(HttpURLConnection urlConnection) {
+        if (!isKeepAlive || urlConnection == null) {
+            return false;
+        }
+
+        InputStream errorStream = urlConnection.getErrorStream();
+        try {
+            return errorStream != null && drain(errorStream);
+        } finally {
+            IOUtils.closeQuietly(errorStream);
+        }
+    }
+
+    /**
+     * read remaining bytes of stream, so that connection can be reused
+     * 
+     * @param stream
+     * @return whether drained completely, false if not keep alive or remaining bytes is more than
+     *         {@link #MAX_DRAIN_BYTES}
+     */
+    private static boolean drain(InputStream stream) {
+        if (!isKeepAlive) {
+            return false;
+        }
+
+        try {
+            byte[] buffer = STREAM_BUFFER.get();
+            int count, total = 0;
+            while ((count = stream.read(buffer)) != -1) {
+                total += count;
+                if (total > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     /**
      * set HttpRequest to HttpURLConnection
      * 
@@ -457,6 +821,9 @@ public class HttpUtils {
         }
         response.setResponseHeader(HttpConstants.EXPIRES, urlConnection.getHeaderField("Expires"));
         response.setResponseHeader(HttpConstants.CACHE_CONTROL, urlConnection.getHeaderField("Cache-Control"));
+        response.setResponseHeader(HttpConstants.CONTENT_TYPE, urlConnection.getHeaderField("Content-Type"));
+        response.setResponseHeader(HttpConstants.ETAG, urlConnection.getHeaderField("ETag"));
+        response.setResponseHeader(HttpConstants.LAST_MODIFIED, urlConnection.getHeaderField("Last-Modified"));
     }
 
     /**
@@ -550,4 +917,126 @@ public class HttpUtils {
          */
         protected void onPostGet(HttpResponse httpResponse) {}
     }
+
+    /**
+     * HttpStreamListener, handle response body as stream in
+     * {@link HttpUtils#httpGetStream(HttpRequest, HttpStreamListener)}
+     * <ul>
+     * <li>Override {@link #onStream(InputStream, HttpResponse)} to read raw input stream</li>
+     * <li>Or override {@link #onChunk(byte[], int, int)} to get response body chunk by chunk, the buffer is reused,
+     * so copy it if you want to keep the data</li>
+     * </ul>
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-30
+     */
+    public static abstract class HttpStreamListener {
+
+        /**
+         * Runs on the calling thread when response body is ready, input stream will be closed after it.
+         * <ul>
+         * <li>default read input stream into a reused buffer and call {@link #onChunk(byte[], int, int)} for each
+         * chunk</li>
+         * </ul>
+         * 
+         * @param input raw input stream of response body
+         * @param response response which response code and headers have been set
+         * @throws IOException
+         */
+        protected void onStream(InputStream input, HttpResponse response) throws IOException {
+            byte[] buffer = STREAM_BUFFER.get();
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                onChunk(buffer, 0, count);
+            }
+        }
+
+        /**
+         * Runs on the calling thread for each chunk of response body
+         * 
+         * @param buffer reused buffer, data in it will be overwritten by next chunk
+         * @param offset
+         * @param count
+         * @throws IOException
+         */
+        protected void onChunk(byte[] buffer, int offset, int count) throws IOException {}
+    }
+
+    /**
+     * InputStream which adds bytes read to a counter
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-7-1
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private AtomicLong counter;
+
+        public CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                counter.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                counter.addAndGet(skipped);
+            }
+            return skipped;
+        }
+    }
+
+    /**
+     * read whole response body and set it to response
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-6-30
+     */
+    private static class BodyStreamListener extends HttpStreamListener {
+
+        /** whether set body as bytes, else decode it to string **/
+        private boolean               isBytes;
+        private ByteArrayOutputStream body;
+
+        public BodyStreamListener(boolean isBytes) {
+            this.isBytes = isBytes;
+        }
+
+        @Override
+        protected void onStream(InputStream input, HttpResponse response) throws IOException {
+            body = new ByteArrayOutputStream(1024);
+            super.onStream(input, response);
+            if (isBytes) {
+                response.setResponseBytes(body.toByteArray());
+            } else {
+                try {
+                    response.setResponseBody(body.toString(getCharset(response.getContentType(), DEFAULT_CHARSET)));
+                } catch (UnsupportedEncodingException e) {
+                    response.setResponseBody(body.toString(DEFAULT_CHARSET));
+                }
+            }
+            body = null;
+        }
+
+        @Override
+        protected void onChunk(byte[] buffer, int offset, int count) {
+            body.write(buffer, offset, count);
+        }
+    }
 }
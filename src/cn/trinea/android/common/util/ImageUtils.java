@@ -1,5 +1,6 @@
 package cn.trinea.android.common.util;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +33,17 @@ import android.graphics.drawable.Drawable;
  * <li>{@link #getDrawableFromUrl(String, int)}</li>
  * </ul>
  * <ul>
+ * decode image to target size
+ * <li>{@link #getBitmapFromUrl(String, int, Map, int, int)}</li>
+ * <li>{@link #getBitmapFromFile(String, int, int)}</li>
+ * <li>{@link #getBitmapFromByte(byte[], int, int)}</li>
+ * <li>{@link #getBitmapFromStream(InputStream, int, int)}</li>
+ * <li>{@link #calculateInSampleSize(int, int, int, int)}</li>
+ * <li>{@link #getMarkableInputStream(InputStream)} wrap stream so that it can be reset after decoding bounds</li>
+ * <li>{@link #markInputStream(InputStream)}, {@link #resetInputStream(InputStream)} and
+ * {@link #unmarkInputStream(InputStream)} to decode stream again</li>
+ * </ul>
+ * <ul>
  * scale image
  * <li>{@link #scaleImageTo(Bitmap, int, int)}</li>
  * <li>{@link #scaleImage(Bitmap, float, float)}</li>
@@ -41,6 +53,9 @@ import android.graphics.drawable.Drawable;
  */
 public class ImageUtils {
 
+    /** min read limit of mark of stream returned by {@link #getMarkableInputStream(InputStream)} **/
+    public static final int MARK_LIMIT = 64 * 1024;
+
     private ImageUtils() {
         throw new AssertionError();
     }
@@ -136,6 +151,30 @@ public class ImageUtils {
     public static InputStream getInputStreamFromUrl(String imageUrl, int readTimeOutMillis,
             Map<String, String> requestProperties) {
         InputStream stream = null;
+        try {
+            stream = getHttpURLConnection(imageUrl, readTimeOutMillis, requestProperties).getInputStream();
+        } catch (IOException e) {
+            IOUtils.close(stream);
+            throw new RuntimeException("IOException occurred. ", e);
+        }
+        return stream;
+    }
+
+    /**
+     * get http connection by imageUrl, not connected, you need to get input stream and disconnect it yourself
+     * <ul>
+     * <li>You can get content length and response code by it, which {@link #getInputStreamFromUrl(String, int, Map)}
+     * can not</li>
+     * </ul>
+     * 
+     * @param imageUrl
+     * @param readTimeOutMillis read time out, if less than 0, not set, in mills
+     * @param requestProperties http request properties
+     * @return
+     * @throws RuntimeException if imageUrl is malformed or open connection fail
+     */
+    public static HttpURLConnection getHttpURLConnection(String imageUrl, int readTimeOutMillis,
+            Map<String, String> requestProperties) {
         try {
             URL url = new URL(imageUrl);
             HttpURLConnection con = (HttpURLConnection)url.openConnection();
@@ -143,15 +182,12 @@ public class ImageUtils {
             if (readTimeOutMillis > 0) {
                 con.setReadTimeout(readTimeOutMillis);
             }
-            stream = con.getInputStream();
+            return con;
         } catch (MalformedURLException e) {
-            IOUtils.close(stream);
             throw new RuntimeException("MalformedURLException occurred. ", e);
         } catch (IOException e) {
-            IOUtils.close(stream);
             throw new RuntimeException("IOException occurred. ", e);
         }
-        return stream;
     }
 
     /**
@@ -208,6 +244,191 @@ public class ImageUtils {
         return b;
     }
 
+    /**
+     * get Bitmap by imageUrl, decode with a sample size calculated from target size to save memory
+     * 
+     * @param imageUrl
+     * @param readTimeOut
+     * @param requestProperties http request properties
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return
+     * @see #calculateInSampleSize(int, int, int, int)
+     */
+    public static Bitmap getBitmapFromUrl(String imageUrl, int readTimeOut, Map<String, String> requestProperties,
+            int reqWidth, int reqHeight) {
+        InputStream stream = getInputStreamFromUrl(imageUrl, readTimeOut, requestProperties);
+        try {
+            return getBitmapFromStream(stream, reqWidth, reqHeight);
+        } finally {
+            IOUtils.close(stream);
+        }
+    }
+
+    /**
+     * get Bitmap by input stream, decode with a sample size calculated from target size to save memory
+     * <ul>
+     * <li>image is decoded from input stream directly, see {@link #getMarkableInputStream(InputStream)}</li>
+     * <li>you need to close inputStream yourself</li>
+     * </ul>
+     * 
+     * @param inputStream
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return null if inputStream is null or decode failed
+     * @see #calculateInSampleSize(int, int, int, int)
+     */
+    public static Bitmap getBitmapFromStream(InputStream inputStream, int reqWidth, int reqHeight) {
+        if (inputStream == null) {
+            return null;
+        }
+
+        InputStream stream = getMarkableInputStream(inputStream);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        markInputStream(stream);
+        BitmapFactory.decodeStream(stream, null, options);
+        if (!resetInputStream(stream)) {
+            return null;
+        }
+        unmarkInputStream(stream);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeStream(stream, null, options);
+    }
+
+    /**
+     * get Bitmap by file path, decode with a sample size calculated from target size to save memory
+     * 
+     * @param filePath
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return
+     * @see #calculateInSampleSize(int, int, int, int)
+     */
+    public static Bitmap getBitmapFromFile(String filePath, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(filePath, options);
+    }
+
+    /**
+     * get Bitmap by byte array, decode with a sample size calculated from target size to save memory
+     * 
+     * @param b
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return
+     * @see #calculateInSampleSize(int, int, int, int)
+     */
+    public static Bitmap getBitmapFromByte(byte[] b, int reqWidth, int reqHeight) {
+        if (b == null || b.length == 0) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(b, 0, b.length, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(b, 0, b.length, options);
+    }
+
+    /**
+     * calculate the largest inSampleSize which is a power of 2 and keeps the decoded image not smaller than target size
+     * 
+     * @param width width of image
+     * @param height height of image
+     * @param reqWidth target width, not greater than 0 means not restrict width
+     * @param reqHeight target height, not greater than 0 means not restrict height
+     * @return inSampleSize, 1 means not sample
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        if (width <= 0 || height <= 0 || (reqWidth <= 0 && reqHeight <= 0)) {
+            return 1;
+        }
+
+        int inSampleSize = 1;
+        while ((reqWidth <= 0 || width / (inSampleSize * 2) >= reqWidth)
+                && (reqHeight <= 0 || height / (inSampleSize * 2) >= reqHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * wrap input stream so that it can be reset after decoding image bounds
+     * <ul>
+     * <li>At least {@link #MARK_LIMIT} bytes can be read after mark, smaller read limit is ignored, because
+     * {@link BitmapFactory#decodeStream(InputStream, android.graphics.Rect, BitmapFactory.Options)} marks stream with a
+     * small read limit itself below Android 4.4</li>
+     * <li>Use {@link #markInputStream(InputStream)} rather than {@link InputStream#mark(int)} if it must be reset
+     * whatever how many bytes are read, such as decoding image again</li>
+     * <li>Bytes are buffered only when needed, so image is not read into memory at once</li>
+     * </ul>
+     * 
+     * @param inputStream
+     * @return null if inputStream is null
+     */
+    public static InputStream getMarkableInputStream(InputStream inputStream) {
+        if (inputStream == null || inputStream instanceof MarkableInputStream) {
+            return inputStream;
+        }
+        return new MarkableInputStream(inputStream);
+    }
+
+    /**
+     * mark stream returned by {@link #getMarkableInputStream(InputStream)}, bytes read after it are kept until
+     * {@link #unmarkInputStream(InputStream)}, so {@link #resetInputStream(InputStream)} always succeeds
+     * <ul>
+     * <li>Marks and resets of decoder between them still work, they do not drop the bytes kept</li>
+     * <li>For other stream, it's same to {@link InputStream#mark(int)} with {@link #MARK_LIMIT}</li>
+     * </ul>
+     * 
+     * @param inputStream
+     */
+    public static void markInputStream(InputStream inputStream) {
+        if (inputStream instanceof MarkableInputStream) {
+            ((MarkableInputStream)inputStream).markAll();
+        } else {
+            inputStream.mark(MARK_LIMIT);
+        }
+    }
+
+    /**
+     * reset stream to the last mark
+     * 
+     * @param inputStream
+     * @return whether reset successfully, false if more than read limit bytes have been read after mark, it's always
+     *         true for stream marked by {@link #markInputStream(InputStream)}
+     */
+    public static boolean resetInputStream(InputStream inputStream) {
+        try {
+            if (inputStream instanceof MarkableInputStream) {
+                ((MarkableInputStream)inputStream).resetAll();
+            } else {
+                inputStream.reset();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * stop keeping bytes read after {@link #markInputStream(InputStream)}, so they can be released
+     * 
+     * @param inputStream
+     */
+    public static void unmarkInputStream(InputStream inputStream) {
+        if (inputStream instanceof MarkableInputStream) {
+            ((MarkableInputStream)inputStream).unmarkAll();
+        }
+    }
+
     /**
      * scale image
      * 
@@ -238,4 +459,62 @@ public class ImageUtils {
         return Bitmap.createBitmap(org, 0, 0, org.getWidth(), org.getHeight(), matrix, true);
     }
 
+    /**
+     * BufferedInputStream whose read limit of mark is at least {@link ImageUtils#MARK_LIMIT}
+     * <ul>
+     * <li>{@link #markAll()} keeps all bytes read after it, marks and resets between {@link #markAll()} and
+     * {@link #unmarkAll()} are relative to bytes kept, so decoder can mark and reset stream itself</li>
+     * </ul>
+     * 
+     * @author <a href="http://www.trinea.cn" target="_blank">Trinea</a> 2014-7-3
+     */
+    private static class MarkableInputStream extends BufferedInputStream {
+
+        /** whether {@link #markAll()} is called and {@link #unmarkAll()} not **/
+        private boolean isMarkAll;
+        /** offset of mark from {@link #markpos} while {@link #isMarkAll}, -1 if not marked **/
+        private int     markOffset = -1;
+
+        public MarkableInputStream(InputStream in) {
+            super(in, 16 * 1024);
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            if (isMarkAll) {
+                markOffset = pos - markpos;
+            } else {
+                super.mark(Math.max(readlimit, MARK_LIMIT));
+            }
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            if (isMarkAll) {
+                pos = markpos + (markOffset >= 0 ? markOffset : 0);
+            } else {
+                super.reset();
+            }
+        }
+
+        public synchronized void markAll() {
+            super.mark(Integer.MAX_VALUE);
+            isMarkAll = true;
+            markOffset = -1;
+        }
+
+        public synchronized void resetAll() throws IOException {
+            if (!isMarkAll) {
+                throw new IOException("Stream is not marked by markAll.");
+            }
+            pos = markpos;
+            markOffset = -1;
+        }
+
+        public synchronized void unmarkAll() {
+            isMarkAll = false;
+            markOffset = -1;
+            markpos = -1;
+        }
+    }
 }